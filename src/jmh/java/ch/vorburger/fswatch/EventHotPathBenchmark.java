@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jspecify.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost (and allocations, with <code>-prof gc</code>) per event of DirectoryWatcherImpl's processing of polled events,
+ * without the WatchService, for events which the listener is interested in, and for events it is not.
+ *
+ * <p>This is in the ch.vorburger.fswatch package (unlike the other benchmarks) to be able to call processEvents().
+ *
+ * @author Michael Vorburger.ch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventHotPathBenchmark {
+
+    private static final int EVENTS = 100;
+
+    @Param({ "true", "false" })
+    boolean interested;
+
+    Path root = Path.of(".");
+    @Nullable DirectoryWatcherImpl watcher;
+    @Nullable WatchKey key;
+    final List<WatchEvent<?>> events = new ArrayList<>();
+    @Nullable Path lastChanged;
+    // The first exception (if any), which fails the run, instead of only being printed while measuring
+    final AtomicReference<@Nullable Throwable> failure = new AtomicReference<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("fswatch-hotpath");
+        ChangeKind[] eventKinds = interested ? new ChangeKind[] { ChangeKind.MODIFIED } : new ChangeKind[] { ChangeKind.DELETED };
+        DirectoryWatcherImpl.Options options = new DirectoryWatcherImpl.Options();
+        options.eventKinds = eventKinds;
+        DirectoryWatcherImpl watcher = new DirectoryWatcherImpl(root, (path, changeKind) -> lastChanged = path,
+                t -> failure.compareAndSet(null, t), options);
+        this.watcher = watcher;
+        key = watcher.registry.keys().iterator().next();
+        for (int i = 0; i < EVENTS; i++) {
+            events.add(new ModifyEvent(Path.of("file" + i + ".txt")));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public @Nullable Path processEvents() {
+        DirectoryWatcherImpl watcher = this.watcher;
+        WatchKey key = this.key;
+        if (watcher != null && key != null) {
+            watcher.processEvents(key, events);
+        }
+        checkFailure();
+        return lastChanged;
+    }
+
+    private void checkFailure() {
+        Throwable t = failure.get();
+        if (t != null) {
+            throw new IllegalStateException("DirectoryWatcherImpl failed", t);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+        Files.delete(root);
+        checkFailure();
+    }
+
+    private record ModifyEvent(Path context) implements WatchEvent<Path> {
+        @Override
+        public Kind<Path> kind() {
+            return StandardWatchEventKinds.ENTRY_MODIFY;
+        }
+
+        @Override
+        public int count() {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch.benchmarks;
+
+import ch.vorburger.fswatch.DirectoryWatcher;
+import ch.vorburger.fswatch.DirectoryWatcherBuilder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.jspecify.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end latency from writing a file until the Listener's onChange() for it.
+ *
+ * <p>This includes the quiet period (which is 0 by default here, so that it's only the overhead).
+ * Every write is to a new file, and only the change of that file counts.
+ * Note that on macOS, the JDK's WatchService polls, so this is dominated by its poll interval.
+ *
+ * @author Michael Vorburger.ch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LatencyBenchmark {
+
+    @Param({ "0" })
+    long quietPeriodInMS;
+
+    final BlockingQueue<Path> changes = new LinkedBlockingQueue<>();
+    Path root = Path.of(".");
+    Path file = Path.of(".");
+    @Nullable DirectoryWatcher watcher;
+    long writes;
+
+    @Setup(Level.Trial)
+    public void watch() throws IOException {
+        root = Trees.create("fswatch-latency", 10);
+        watcher = new DirectoryWatcherBuilder().path(root).quietPeriodInMS(quietPeriodInMS)
+                .listener((path, changeKind) -> changes.add(path)).build();
+    }
+
+    // A new file for every write, so that a late (e.g. second MODIFIED) change of the previous write is never mistaken for it
+    @Setup(Level.Invocation)
+    public void nextFile() {
+        file = root.resolve("d0").resolve("f" + ++writes + ".txt");
+        changes.clear();
+    }
+
+    @Benchmark
+    public Path writeUntilChange() throws IOException, InterruptedException {
+        Files.writeString(file, Long.toString(writes));
+        Path changed;
+        do {
+            changed = changes.poll(10, TimeUnit.SECONDS);
+            if (changed == null) {
+                throw new IllegalStateException("No onChange() for " + file + " within 10s");
+            }
+        } while (!changed.equals(file));
+        return changed;
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+        Trees.delete(root);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch.benchmarks;
+
+import ch.vorburger.fswatch.DirectoryWatcher;
+import ch.vorburger.fswatch.DirectoryWatcherBuilder;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.jspecify.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to walk and register a tree of directories, from build() until it returns.
+ *
+ * <p>Note that on Linux, 100k directories need more than the (typical) default
+ * <code>sysctl fs.inotify.max_user_watches</code> of 8192 (or 65536).
+ *
+ * @author Michael Vorburger.ch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RegistrationBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    int directories;
+
+    @Param({ "1", "4" })
+    int parallelism;
+
+    Path root = Path.of(".");
+    @Nullable DirectoryWatcher watcher;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        root = Trees.create("fswatch-registration", directories);
+    }
+
+    @Benchmark
+    public DirectoryWatcher register() throws IOException {
+        watcher = new DirectoryWatcherBuilder().path(root).registrationParallelism(parallelism).listener((path, changeKind) -> { }).build();
+        return watcher;
+    }
+
+    // Closing (cancelling all WatchKeys) is not part of what's measured
+    @TearDown(Level.Invocation)
+    public void close() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        Trees.delete(root);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch.benchmarks;
+
+import ch.vorburger.fswatch.DirectoryWatcher;
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.DirectoryWatcherBuilder;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.jspecify.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sustained events per second, for bursts of newly created files.
+ *
+ * <p>Each invocation creates a burst of files as fast as it can, and then waits until the BatchListener
+ * received all of them (so the score includes the time it takes to create the files). If the WatchService overflows (see StandardWatchEventKinds.OVERFLOW), changes are
+ * lost, and the benchmark fails instead of reporting a misleading score; the larger burst
+ * shows how far the watcher keeps up on this machine (on Linux, see <code>sysctl fs.inotify.max_queued_events</code>).
+ *
+ * @author Michael Vorburger.ch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ThroughputBenchmark {
+
+    final Set<Path> created = ConcurrentHashMap.newKeySet();
+    Path root = Path.of(".");
+    @Nullable DirectoryWatcher watcher;
+    int generation;
+
+    @Setup(Level.Trial)
+    public void watch() throws IOException {
+        root = Files.createTempDirectory("fswatch-throughput");
+        watcher = new DirectoryWatcherBuilder().path(root).quietPeriodInMS(0).eventKinds(ChangeKind.CREATED)
+                .batchListener(changes -> created.addAll(changes.keySet())).build();
+    }
+
+    @Setup(Level.Invocation)
+    public void nextGeneration() {
+        created.clear();
+        generation++;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public int burstOf1k() throws IOException, InterruptedException {
+        return createBurst(1000);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10000)
+    public int burstOf10k() throws IOException, InterruptedException {
+        return createBurst(10000);
+    }
+
+    private int createBurst(int burst) throws IOException, InterruptedException {
+        for (int i = 0; i < burst; i++) {
+            Files.createFile(root.resolve(generation + "-" + i));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (created.size() < burst) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Only received " + created.size() + " of " + burst
+                        + " changes within 30s, some were lost to an OVERFLOW");
+            }
+            Thread.sleep(1);
+        }
+        return burst;
+    }
+
+    // DELETED is not one of the eventKinds, so this doesn't count towards the next burst
+    @TearDown(Level.Invocation)
+    public void deleteBurst() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+        Trees.delete(root);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch.benchmarks;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Synthetic directory trees for benchmarks.
+ *
+ * @author Michael Vorburger.ch
+ */
+final class Trees {
+
+    private static final int FANOUT = 10;
+
+    private Trees() {
+    }
+
+    /**
+     * Create a temporary directory with (breadth first) directories below it,
+     * each of which has up to 10 sub-directories and one small file.
+     */
+    static Path create(String prefix, int directories) throws IOException {
+        Path root = Files.createTempDirectory(prefix);
+        Queue<Path> parents = new ArrayDeque<>();
+        parents.add(root);
+        int created = 0;
+        while (created < directories) {
+            Path parent = parents.remove();
+            for (int i = 0; i < FANOUT && created < directories; i++, created++) {
+                Path dir = Files.createDirectory(parent.resolve("d" + i));
+                Files.writeString(dir.resolve("f.txt"), "fswatch");
+                parents.add(dir);
+            }
+        }
+        return root;
+    }
+
+    static void delete(Path root) throws IOException {
+        MoreFiles.deleteRecursively(root, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+}
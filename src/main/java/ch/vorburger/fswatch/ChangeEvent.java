@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A change of a directory or file, with its attributes, which are read (at most) once, however many listeners
+ * (and filters) look at them; or which the watcher already knew, when it noticed the change.
+ *
+ * @author Michael Vorburger.ch
+ */
+public final class ChangeEvent {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final long sequence;
+    private final Path root;
+    private final Path path;
+    private final ChangeKind changeKind;
+    private final @Nullable Path source;
+    private volatile @Nullable BasicFileAttributes attributes;
+    private volatile boolean attributesRead;
+
+    /**
+     * Constructor.
+     * @param root the watched directory (or file)
+     * @param path the (absolute) path which changed
+     * @param changeKind how it changed
+     * @param source where it was before, if it {@link ChangeKind#MOVED}
+     * @param attributes the attributes of path, if already known (following symbolic links); else they are read when needed
+     */
+    ChangeEvent(Path root, Path path, ChangeKind changeKind, @Nullable Path source, @Nullable BasicFileAttributes attributes) {
+        this.sequence = SEQUENCE.incrementAndGet();
+        this.root = root;
+        this.path = path;
+        this.changeKind = changeKind;
+        this.source = source;
+        this.attributes = attributes;
+        // What's gone has no attributes anymore, so there's no need to try to read them
+        this.attributesRead = attributes != null || changeKind == ChangeKind.DELETED;
+    }
+
+    /**
+     * Returns the sequence number of this event, which is higher for every event created later (by any watcher).
+     * @return the sequence number
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the watched directory (or file) which this is a change in.
+     * @return the watched directory
+     */
+    public Path root() {
+        return root;
+    }
+
+    /**
+     * Returns the path which changed (like the one passed to {@link DirectoryWatcher.Listener#onChange(Path, ChangeKind)}).
+     * For a {@link ChangeKind#MOVED}, this is where it is now.
+     * @return the path which changed
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Returns the path which changed, relative to the {@link #root()}.
+     * @return the relative path
+     */
+    public Path relativePath() {
+        return root.relativize(path);
+    }
+
+    /**
+     * Returns how it changed.
+     * @return the ChangeKind
+     */
+    public ChangeKind changeKind() {
+        return changeKind;
+    }
+
+    /**
+     * Returns where it was before, if it {@link ChangeKind#MOVED}.
+     * @return the path it moved from, or null if it did not move
+     */
+    public @Nullable Path source() {
+        return source;
+    }
+
+    /**
+     * Returns the attributes (following symbolic links) of the path, as it was when the change was noticed,
+     * or when this was first called. They are only read once, and then shared by everybody who calls this.
+     * @return the attributes, or null if it does not exist (anymore), or they could not be read
+     */
+    public @Nullable BasicFileAttributes attributes() {
+        if (!attributesRead) {
+            synchronized (this) {
+                if (!attributesRead) {
+                    try {
+                        attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        attributes = null;
+                    }
+                    attributesRead = true;
+                }
+            }
+        }
+        return attributes;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + changeKind + " " + (source != null ? source + " -> " : "") + path;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent.Kind;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Utilities for {@link ChangeKind}.
+ *
+ * @author Michael Vorburger.ch
+ */
+// intentionally package local, for now
+final class ChangeKinds {
+
+    private ChangeKinds() { }
+
+    /**
+     * Map the kind of a WatchEvent (other than OVERFLOW) to our ChangeKind.
+     */
+    static ChangeKind of(Kind<?> kind) {
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+            return ChangeKind.CREATED;
+        } else if (kind == StandardWatchEventKinds.ENTRY_MODIFY) {
+            return ChangeKind.MODIFIED;
+        } else {
+            return ChangeKind.DELETED;
+        }
+    }
+
+    /**
+     * Merge two successive changes of the same path into one.
+     *
+     * @param previous the earlier change, or null if there was none
+     * @param next the later change
+     * @return the merged change, or null if they cancel each other out (CREATED then DELETED)
+     */
+    static @Nullable ChangeKind merge(@Nullable ChangeKind previous, ChangeKind next) {
+        if (previous == null) {
+            return next;
+        }
+        switch (previous) {
+            case CREATED:
+                // Something that is new, and then gone again, is of no interest; but new and then modified still is new
+                return next == ChangeKind.DELETED ? null : ChangeKind.CREATED;
+            case DELETED:
+                // Deleted and then (re-)created is, from the point of view of a listener, a modification
+                return next == ChangeKind.DELETED ? ChangeKind.DELETED : ChangeKind.MODIFIED;
+            case MODIFIED:
+            default:
+                return next == ChangeKind.DELETED ? ChangeKind.DELETED : ChangeKind.MODIFIED;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static java.util.Objects.requireNonNull;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.DirectoryWatcher.EventListener;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Publishes changes as a {@link Flow.Publisher}, which only delivers as many as each Subscriber requested.
+ *
+ * <p>Changes which a Subscriber has not requested (yet) are held back per path, instead of queued: successive
+ * changes of the same path are merged (like by the {@link EventQueue.OverflowPolicy#COALESCE_BY_PATH}), and stay
+ * in the order in which each path first changed. So a Subscriber which is behind holds (at most) one change per
+ * changed path, however many changes happen meanwhile.
+ *
+ * <p>Use with {@link DirectoryWatcherBuilder#publisher(ChangePublisher)}, and keep a reference to it to subscribe.
+ * Subscribers are only notified about changes which happen after they subscribed. The publisher does not know when
+ * the watcher is closed; {@link #close()} it, to complete all Subscribers.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class ChangePublisher implements Flow.Publisher<ChangeEvent>, EventListener, AutoCloseable {
+
+    private final static Logger log = LoggerFactory.getLogger(ChangePublisher.class);
+
+    private final Executor executor;
+    private final List<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * Constructor, which notifies the Subscribers on the common ForkJoinPool (like the SubmissionPublisher).
+     */
+    public ChangePublisher() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor.
+     * @param executor the executor to notify the Subscribers on (each one only by one Thread at a time)
+     */
+    public ChangePublisher(Executor executor) {
+        this.executor = requireNonNull(executor);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ChangeEvent> subscriber) {
+        ChangeSubscription subscription = new ChangeSubscription(requireNonNull(subscriber));
+        subscriptions.add(subscription);
+        if (closed) {
+            subscription.complete();
+        } else {
+            subscription.signal();
+        }
+    }
+
+    @Override
+    public void onEvent(ChangeEvent event) {
+        for (ChangeSubscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Completes all Subscribers, dropping the changes which they have not requested yet; and any which subscribe later.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (ChangeSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    private final class ChangeSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super ChangeEvent> subscriber;
+
+        // All guarded by this
+        private final Map<Path, ChangeEvent> pendingChanges = new LinkedHashMap<>();
+        private long demand;
+        private boolean subscribed;
+        private boolean draining;
+        private boolean completed;
+        private boolean cancelled;
+        private @Nullable Throwable error;
+
+        ChangeSubscription(Flow.Subscriber<? super ChangeEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        synchronized void offer(ChangeEvent event) {
+            if (cancelled || completed) {
+                return;
+            }
+            Path source = event.source();
+            if (source != null && (pendingChanges.containsKey(source) || pendingChanges.containsKey(event.path()))) {
+                // Moved from or to a path which has a pending change, which is merged like a DELETED and a CREATED
+                merge(new ChangeEvent(event.root(), source, ChangeKind.DELETED, null, null));
+                merge(new ChangeEvent(event.root(), event.path(), ChangeKind.CREATED, null, null));
+            } else {
+                merge(event);
+            }
+            signal();
+        }
+
+        // Must hold this
+        private void merge(ChangeEvent event) {
+            Path path = event.path();
+            @Nullable ChangeEvent previous = pendingChanges.get(path);
+            if (previous == null) {
+                pendingChanges.put(path, event);
+                return;
+            }
+            ChangeKind previousKind = previous.changeKind();
+            Path previousSource = previous.source();
+            if (previousSource != null) {
+                // Moved here, and then changed again: that's a DELETED there, and a CREATED here
+                merge(new ChangeEvent(event.root(), previousSource, ChangeKind.DELETED, null, null));
+                previousKind = ChangeKind.CREATED;
+            }
+            @Nullable ChangeKind merged = ChangeKinds.merge(previousKind, event.changeKind());
+            if (merged == null) {
+                pendingChanges.remove(path);
+            } else if (merged == event.changeKind()) {
+                // Keeps its place, i.e. where the path first changed
+                pendingChanges.put(path, event);
+            } else {
+                pendingChanges.put(path, new ChangeEvent(event.root(), path, merged, null, null));
+            }
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (cancelled) {
+                return;
+            }
+            if (n <= 0) {
+                // As required by rule 3.9 of the Reactive Streams specification
+                error = new IllegalArgumentException("non-positive subscription request: " + n);
+            } else {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                pendingChanges.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        synchronized void complete() {
+            completed = true;
+            pendingChanges.clear();
+            signal();
+        }
+
+        // Starts draining, unless it's already going on
+        synchronized void signal() {
+            if (draining || cancelled) {
+                return;
+            }
+            draining = true;
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                draining = false;
+                log.error("Could not notify Subscriber {}", subscriber, e);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                @Nullable ChangeEvent next = null;
+                @Nullable Throwable errorToSignal = null;
+                boolean subscribe = false;
+                boolean complete = false;
+                synchronized (this) {
+                    if (cancelled) {
+                        draining = false;
+                        return;
+                    }
+                    if (!subscribed) {
+                        subscribed = subscribe = true;
+                    } else if (error != null) {
+                        errorToSignal = error;
+                        cancelled = true;
+                    } else if (!pendingChanges.isEmpty() && demand > 0) {
+                        Iterator<ChangeEvent> it = pendingChanges.values().iterator();
+                        next = it.next();
+                        it.remove();
+                        if (demand != Long.MAX_VALUE) {
+                            demand--;
+                        }
+                    } else if (completed) {
+                        complete = cancelled = true;
+                    } else {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    if (subscribe) {
+                        subscriber.onSubscribe(this);
+                    } else if (errorToSignal != null) {
+                        subscriptions.remove(this);
+                        subscriber.onError(errorToSignal);
+                    } else if (complete) {
+                        subscriptions.remove(this);
+                        subscriber.onComplete();
+                    } else if (next != null) {
+                        subscriber.onNext(next);
+                    }
+                } catch (Throwable e) {
+                    // Subscribers must not throw (rule 2.13), so this one is considered cancelled
+                    log.error("Subscriber {} failed, cancelling its subscription", subscriber, e);
+                    cancel();
+                }
+            }
+        }
+    }
+}
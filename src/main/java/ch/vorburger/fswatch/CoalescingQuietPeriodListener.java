@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import ch.vorburger.fswatch.DirectoryWatcher.BatchListener;
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.DirectoryWatcher.ExceptionHandler;
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Listener which, like the {@link QuietPeriodListener}, only notifies after a certain quiet period,
+ * but which collects all changed paths, and delivers them together to a wrapped {@link BatchListener}.
+ *
+ * <p>Successive changes of the same path are merged, e.g. CREATED followed by MODIFIED is CREATED,
+ * and CREATED followed by DELETED is dropped.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class CoalescingQuietPeriodListener implements Listener {
+
+    protected final BatchListener delegate;
+    protected final long quietPeriodInMS;
+    private final ExceptionHandler exceptionHandler;
+    private final ScheduledExecutorService scheduler;
+    private final WatcherMetrics metrics;
+    // Allocated once, not on every schedule()
+    private final Runnable onQuietPeriodElapsed = this::onQuietPeriodElapsed;
+
+    // All guarded by this
+    protected boolean scheduled;
+    protected long deadlineNanos;
+    private Map<Path, ChangeKind> pendingChanges = new LinkedHashMap<>();
+
+    /**
+     * Constructor.
+     * @param quietPeriodInMS the quiet period in milliseconds
+     * @param listenerToWrap the listener to wrap
+     * @param exceptionHandler the exception handler
+     */
+    public CoalescingQuietPeriodListener(long quietPeriodInMS, BatchListener listenerToWrap, ExceptionHandler exceptionHandler) {
+        this(quietPeriodInMS, listenerToWrap, exceptionHandler, DefaultScheduler.instance());
+    }
+
+    /**
+     * Constructor.
+     * @param quietPeriodInMS the quiet period in milliseconds
+     * @param listenerToWrap the listener to wrap
+     * @param exceptionHandler the exception handler
+     * @param scheduler the scheduler to time the quiet period on, and to notify the wrapped listener from
+     */
+    public CoalescingQuietPeriodListener(long quietPeriodInMS, BatchListener listenerToWrap, ExceptionHandler exceptionHandler,
+            ScheduledExecutorService scheduler) {
+        this(quietPeriodInMS, listenerToWrap, exceptionHandler, scheduler, WatcherMetrics.NONE);
+    }
+
+    /**
+     * Constructor.
+     * @param quietPeriodInMS the quiet period in milliseconds
+     * @param listenerToWrap the listener to wrap
+     * @param exceptionHandler the exception handler
+     * @param scheduler the scheduler to time the quiet period on, and to notify the wrapped listener from
+     * @param metrics notified about changes suppressed during the quiet period
+     */
+    public CoalescingQuietPeriodListener(long quietPeriodInMS, BatchListener listenerToWrap, ExceptionHandler exceptionHandler,
+            ScheduledExecutorService scheduler, WatcherMetrics metrics) {
+        this.quietPeriodInMS = quietPeriodInMS;
+        this.delegate = listenerToWrap;
+        this.exceptionHandler = exceptionHandler;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public synchronized void onChange(Path path, ChangeKind changeKind) {
+        ChangeKind previous = pendingChanges.get(path);
+        if (previous != null) {
+            metrics.eventSuppressed();
+        }
+        ChangeKind merged = ChangeKinds.merge(previous, changeKind);
+        if (merged != null) {
+            pendingChanges.put(path, merged);
+        } else {
+            pendingChanges.remove(path);
+        }
+
+        deadlineNanos = System.nanoTime() + MILLISECONDS.toNanos(quietPeriodInMS);
+        if (!scheduled) {
+            schedule(MILLISECONDS.toNanos(quietPeriodInMS));
+        }
+    }
+
+    @SuppressWarnings("FutureReturnValueIgnored") // onQuietPeriodElapsed() handles its own exceptions
+    private synchronized void schedule(long delayInNanos) {
+        try {
+            scheduler.schedule(onQuietPeriodElapsed, delayInNanos, NANOSECONDS);
+            scheduled = true;
+        } catch (RejectedExecutionException e) {
+            scheduled = false;
+            throw e;
+        }
+    }
+
+    private void onQuietPeriodElapsed() {
+        Map<Path, ChangeKind> changes;
+        synchronized (this) {
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            if (remainingNanos > 0) {
+                try {
+                    schedule(remainingNanos);
+                } catch (RejectedExecutionException e) {
+                    exceptionHandler.onException(e);
+                }
+                return;
+            }
+            // Changes arriving from now on (even while the delegate is still busy) start a new quiet period
+            scheduled = false;
+            changes = pendingChanges;
+            pendingChanges = new LinkedHashMap<>();
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        try {
+            delegate.onChanges(Collections.unmodifiableMap(changes));
+        } catch (Throwable e) {
+            exceptionHandler.onException(e);
+        }
+    }
+}
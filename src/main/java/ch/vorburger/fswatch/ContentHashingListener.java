@@ -0,0 +1,182 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Listener which drops MODIFIED changes of files whose content did not actually change, e.g. because they
+ * were only touched, or rewritten with the same content, or because one write caused several events.
+ *
+ * <p>It remembers a (fast, non-cryptographic) hash of the content of (small) files, in a cache of limited size,
+ * which is keyed by file key (if the file system has them; else by path). Files which are larger, not (yet) in
+ * the cache, or which cannot be read, are always passed on as MODIFIED. CREATED and DELETED are always passed on.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class ContentHashingListener implements Listener {
+
+    /** Files larger than this (in bytes) are not hashed, by default. */
+    public static final long DEFAULT_MAX_FILE_SIZE = 1024 * 1024;
+
+    /** How many hashes are remembered, by default. */
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+
+    // The path is included, because file keys (like inode numbers) are reused for new files
+    private record Fingerprint(Path path, long size, long hash) { }
+
+    protected final Listener delegate;
+    private final long maxFileSize;
+    private final WatcherMetrics metrics;
+    private final Map<Object, Fingerprint> fingerprints; // guarded by itself
+    private ByteBuffer buffer = ByteBuffer.allocate(0); // guarded by this; reused, and only grown when needed
+
+    /**
+     * Constructor.
+     * @param listenerToWrap the listener to wrap
+     */
+    public ContentHashingListener(Listener listenerToWrap) {
+        this(listenerToWrap, DEFAULT_MAX_FILE_SIZE, DEFAULT_CACHE_SIZE, WatcherMetrics.NONE);
+    }
+
+    /**
+     * Constructor.
+     * @param listenerToWrap the listener to wrap
+     * @param maxFileSize files larger than this (in bytes) are not hashed; at most Integer.MAX_VALUE
+     * @param cacheSize how many hashes to remember (the least recently used are forgotten)
+     * @param metrics notified about the MODIFIED changes which are dropped
+     */
+    public ContentHashingListener(Listener listenerToWrap, long maxFileSize, int cacheSize, WatcherMetrics metrics) {
+        if (maxFileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxFileSize too large: " + maxFileSize);
+        }
+        this.delegate = listenerToWrap;
+        this.maxFileSize = maxFileSize;
+        this.metrics = metrics;
+        this.fingerprints = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Fingerprint> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @Override
+    public void onChange(Path path, ChangeKind changeKind) throws Throwable {
+        if (changeKind != ChangeKind.DELETED && isUnchanged(path, changeKind, readAttributes(path))) {
+            return;
+        }
+        delegate.onChange(path, changeKind);
+    }
+
+    @Override
+    public void onEvent(ChangeEvent event) throws Throwable {
+        ChangeKind changeKind = event.changeKind();
+        // Uses the attributes of the event, instead of reading them (again)
+        if (changeKind != ChangeKind.DELETED && changeKind != ChangeKind.MOVED
+                && isUnchanged(event.path(), changeKind, event.attributes())) {
+            return;
+        }
+        delegate.onEvent(event);
+    }
+
+    @Override
+    public void onMove(Path source, Path target) throws Throwable {
+        delegate.onMove(source, target);
+    }
+
+    private static @Nullable BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // Typically already deleted again, which a DELETED will follow
+            return null;
+        }
+    }
+
+    // Returns whether to drop this MODIFIED change (and counts it if so)
+    private boolean isUnchanged(Path path, ChangeKind changeKind, @Nullable BasicFileAttributes attrs) {
+        boolean unchanged = attrs != null && isUnchanged(path, attrs);
+        if (unchanged && changeKind == ChangeKind.MODIFIED) {
+            metrics.eventSuppressed();
+            return true;
+        }
+        return false;
+    }
+
+    // Remembers the new hash (also of CREATED files, so that their first MODIFIED can already be checked)
+    private boolean isUnchanged(Path path, BasicFileAttributes attrs) {
+        Object key = attrs.fileKey() != null ? attrs.fileKey() : path;
+        if (!attrs.isRegularFile() || attrs.size() > maxFileSize) {
+            synchronized (fingerprints) {
+                fingerprints.remove(key);
+            }
+            return false;
+        }
+        @Nullable Fingerprint fingerprint;
+        try {
+            fingerprint = fingerprint(path);
+        } catch (IOException e) {
+            // e.g. not readable; so we cannot know, and let the delegate find out
+            fingerprint = null;
+        }
+        @Nullable Fingerprint previous;
+        synchronized (fingerprints) {
+            previous = fingerprint != null ? fingerprints.put(key, fingerprint) : fingerprints.remove(key);
+        }
+        return fingerprint != null && fingerprint.equals(previous);
+    }
+
+    // Reads the file into a heap buffer, instead of memory-mapping it, because that's no faster for small files;
+    // and a mapped file which another process truncates meanwhile causes a SIGBUS, and on Windows cannot be deleted.
+    private synchronized @Nullable Fingerprint fingerprint(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            // The size may have changed since we read the attributes, so we hash what's there now
+            long size = channel.size();
+            if (size > maxFileSize) {
+                return null;
+            }
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate((int) size);
+            }
+            buffer.clear().limit((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until the buffer is full, or the file ended (because it was truncated meanwhile)
+            }
+            buffer.flip();
+            return new Fingerprint(file, buffer.remaining(), XxHash64.hash(buffer, 0));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import ch.vorburger.fswatch.DirectoryWatcher.BatchListener;
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.DirectoryWatcher.ExceptionHandler;
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Listener which, unlike the {@link QuietPeriodListener}, times a separate quiet period for each path, so that
+ * one path which keeps changing does not delay the notification about any other path. Optionally, a maximum wait
+ * makes sure that a path which keeps changing is still notified at least that often.
+ *
+ * <p>The deadlines are kept in a (hashed) timer wheel, of which each slot holds the paths due in one tick
+ * (of 1/8 of the quiet period); a further change of a path only moves its deadline, and it is moved to its new
+ * slot only once its old one is reached. The wheel is only turned (on the ScheduledExecutorService) while
+ * there are any changes pending.
+ *
+ * <p>Successive changes of the same path are merged (see {@link CoalescingQuietPeriodListener}), and all paths
+ * due in the same tick are notified together, to a {@link BatchListener}; or one after the other, to a Listener.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class DebouncingListener implements Listener {
+
+    private static final int WHEEL_SIZE = 64; // a power of 2
+
+    private static final class Pending {
+        final Path path;
+        final long firstNanos;
+        long deadlineNanos;
+        ChangeKind changeKind;
+
+        Pending(Path path, long firstNanos, ChangeKind changeKind) {
+            this.path = path;
+            this.firstNanos = firstNanos;
+            this.changeKind = changeKind;
+        }
+    }
+
+    protected final BatchListener delegate;
+    protected final long quietPeriodInMS;
+    protected final long maxWaitInMS;
+    private final long tickNanos;
+    private final ExceptionHandler exceptionHandler;
+    private final ScheduledExecutorService scheduler;
+    private final WatcherMetrics metrics;
+    // Allocated once, not on every schedule()
+    private final Runnable onTick = this::onTick;
+
+    // All guarded by this
+    private final Map<Path, Pending> pending = new HashMap<>();
+    private final List<ArrayDeque<Pending>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private long currentTick;
+    private boolean scheduled;
+
+    /**
+     * Constructor.
+     * @param quietPeriodInMS the quiet period in milliseconds, of each path
+     * @param maxWaitInMS the maximum time (in milliseconds) after its first change that a path which keeps changing
+     *            is notified at the latest, or 0 to wait for its quiet period however long it takes
+     * @param listenerToWrap the listener to wrap, notified about each changed path one after the other
+     * @param exceptionHandler the exception handler
+     * @param scheduler the scheduler to time the quiet periods on, and to notify the wrapped listener from
+     * @param metrics notified about changes merged into one during a quiet period
+     */
+    public DebouncingListener(long quietPeriodInMS, long maxWaitInMS, Listener listenerToWrap,
+            ExceptionHandler exceptionHandler, ScheduledExecutorService scheduler, WatcherMetrics metrics) {
+        this(quietPeriodInMS, maxWaitInMS, changes -> changes.forEach((path, changeKind) -> {
+            try {
+                listenerToWrap.onChange(path, changeKind);
+            } catch (Throwable e) {
+                exceptionHandler.onException(e);
+            }
+        }), exceptionHandler, scheduler, metrics);
+    }
+
+    /**
+     * Constructor.
+     * @param quietPeriodInMS the quiet period in milliseconds, of each path
+     * @param maxWaitInMS the maximum time (in milliseconds) after its first change that a path which keeps changing
+     *            is notified at the latest, or 0 to wait for its quiet period however long it takes
+     * @param listenerToWrap the listener to wrap, notified about all the paths whose quiet period ended together
+     * @param exceptionHandler the exception handler
+     * @param scheduler the scheduler to time the quiet periods on, and to notify the wrapped listener from
+     * @param metrics notified about changes merged into one during a quiet period
+     */
+    public DebouncingListener(long quietPeriodInMS, long maxWaitInMS, BatchListener listenerToWrap,
+            ExceptionHandler exceptionHandler, ScheduledExecutorService scheduler, WatcherMetrics metrics) {
+        if (maxWaitInMS != 0 && maxWaitInMS < quietPeriodInMS) {
+            throw new IllegalArgumentException("maxWaitInMS (" + maxWaitInMS + ") must be 0, or at least quietPeriodInMS (" + quietPeriodInMS + ")");
+        }
+        this.quietPeriodInMS = quietPeriodInMS;
+        this.maxWaitInMS = maxWaitInMS;
+        this.tickNanos = Math.max(MILLISECONDS.toNanos(1), MILLISECONDS.toNanos(quietPeriodInMS) / 8);
+        this.delegate = listenerToWrap;
+        this.exceptionHandler = exceptionHandler;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayDeque<>());
+        }
+    }
+
+    @Override
+    public synchronized void onChange(Path path, ChangeKind changeKind) {
+        long nowNanos = System.nanoTime();
+        Pending previous = pending.get(path);
+        if (previous != null) {
+            metrics.eventSuppressed();
+            ChangeKind merged = ChangeKinds.merge(previous.changeKind, changeKind);
+            if (merged == null) {
+                // Its (now stale) slot in the wheel is skipped when it's reached
+                pending.remove(path);
+                return;
+            }
+            previous.changeKind = merged;
+            previous.deadlineNanos = deadline(previous.firstNanos, nowNanos);
+            return;
+        }
+        if (!scheduled) {
+            currentTick = nowNanos / tickNanos;
+        }
+        Pending added = new Pending(path, nowNanos, changeKind);
+        added.deadlineNanos = deadline(nowNanos, nowNanos);
+        pending.put(path, added);
+        add(added);
+        if (!scheduled) {
+            schedule();
+        }
+    }
+
+    private long deadline(long firstNanos, long nowNanos) {
+        long deadlineNanos = nowNanos + MILLISECONDS.toNanos(quietPeriodInMS);
+        if (maxWaitInMS > 0) {
+            deadlineNanos = Math.min(deadlineNanos, firstNanos + MILLISECONDS.toNanos(maxWaitInMS));
+        }
+        return deadlineNanos;
+    }
+
+    private void add(Pending entry) {
+        // Rounded up, so that it's never notified before its deadline; and at least one tick after the current one
+        long tick = Math.max(currentTick + 1, (entry.deadlineNanos + tickNanos - 1) / tickNanos);
+        wheel.get((int) (tick & (WHEEL_SIZE - 1))).add(entry);
+    }
+
+    @SuppressWarnings("FutureReturnValueIgnored") // onTick() handles its own exceptions
+    private void schedule() {
+        try {
+            scheduler.schedule(onTick, tickNanos, NANOSECONDS);
+            scheduled = true;
+        } catch (RejectedExecutionException e) {
+            scheduled = false;
+            throw e;
+        }
+    }
+
+    private void onTick() {
+        Map<Path, ChangeKind> changes = new LinkedHashMap<>();
+        synchronized (this) {
+            long nowNanos = System.nanoTime();
+            long nowTick = nowNanos / tickNanos;
+            // If the scheduler was late (by more than a whole turn), each slot only needs to be looked at once
+            long fromTick = Math.max(currentTick + 1, nowTick - WHEEL_SIZE + 1);
+            currentTick = nowTick;
+            for (long tick = fromTick; tick <= nowTick; tick++) {
+                ArrayDeque<Pending> slot = wheel.get((int) (tick & (WHEEL_SIZE - 1)));
+                for (int i = slot.size(); i > 0; i--) {
+                    Pending entry = slot.poll();
+                    if (entry == null || pending.get(entry.path) != entry) {
+                        continue; // stale, because it was merged away, or already notified
+                    }
+                    if (entry.deadlineNanos - nowNanos <= 0) {
+                        pending.remove(entry.path);
+                        changes.put(entry.path, entry.changeKind);
+                    } else {
+                        // Its deadline moved (or is more than a turn of the wheel away)
+                        add(entry);
+                    }
+                }
+            }
+            scheduled = false;
+            if (!pending.isEmpty()) {
+                try {
+                    schedule();
+                } catch (RejectedExecutionException e) {
+                    exceptionHandler.onException(e);
+                }
+            } else {
+                // Only stale entries can be left, and the wheel starts again at another tick next time
+                for (ArrayDeque<Pending> slot : wheel) {
+                    slot.clear();
+                }
+            }
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        try {
+            delegate.onChanges(Collections.unmodifiableMap(changes));
+        } catch (Throwable e) {
+            exceptionHandler.onException(e);
+        }
+    }
+}
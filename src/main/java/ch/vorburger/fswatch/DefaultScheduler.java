@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The one ScheduledExecutorService shared by all watchers in a JVM which were not given their own,
+ * which only times (the quiet period etc.); and the Threads on which their listeners are notified.
+ *
+ * @author Michael Vorburger.ch
+ */
+// intentionally package local, for now
+final class DefaultScheduler {
+
+    private DefaultScheduler() { }
+
+    // Lazy initialization holder class idiom, so that the Thread is only started if it's actually used
+    private static class Holder {
+        static final ScheduledExecutorService INSTANCE = create();
+    }
+
+    private static class ListenerHolder {
+        static final ExecutorService INSTANCE = createListenerExecutor();
+    }
+
+    static ScheduledExecutorService instance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Returns a new Executor for one watcher, which runs its tasks one after the other (in order), on a Thread
+     * of a shared pool; so that a listener which takes long (or blocks) holds up neither the scheduler, nor other watchers.
+     */
+    static Executor newSerialExecutor() {
+        SerialExecutor serialExecutor = new SerialExecutor(ListenerHolder.INSTANCE);
+        Object key = new Object();
+        return task -> serialExecutor.execute(key, task);
+    }
+
+    private static ScheduledExecutorService create() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, DefaultScheduler.class.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    // Like Executors.newCachedThreadPool(), with as many Threads as there are watchers busy notifying at the same time
+    private static ExecutorService createListenerExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, DefaultScheduler.class.getName() + "-listener-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+
+/**
+ * Compact index of the names, sizes, last modified times and file keys (inodes) of the (direct) entries of one directory.
+ *
+ * <p>Unlike the {@link DirectorySnapshot}, this is immutable and only holds arrays sorted by name, without an Object per
+ * entry except its name, so that it can be kept in memory for every directory of a large tree, and compared to a newer
+ * index of the same directory in one linear pass.
+ *
+ * @author Michael Vorburger.ch
+ */
+// intentionally package local, for now
+final class DirectoryIndex {
+
+    interface ChangeCallback {
+        void onChange(String name, ChangeKind changeKind, boolean isDirectory);
+    }
+
+    static final DirectoryIndex EMPTY = new DirectoryIndex(new String[0], new long[0], new long[0], new int[0], new BitSet());
+
+    private final String[] names;
+    private final long[] sizes;
+    private final long[] lastModified;
+    // Hash of BasicFileAttributes.fileKey() (if any), to notice files replaced by another one of the same size and time
+    private final int[] fileKeys;
+    private final BitSet directories;
+
+    private DirectoryIndex(String[] names, long[] sizes, long[] lastModified, int[] fileKeys, BitSet directories) {
+        this.names = names;
+        this.sizes = sizes;
+        this.lastModified = lastModified;
+        this.fileKeys = fileKeys;
+        this.directories = directories;
+    }
+
+    /**
+     * Scan (only) the direct entries of a directory, without recursing into sub-directories.
+     */
+    static DirectoryIndex scan(Path directory) throws IOException {
+        Map<String, BasicFileAttributes> entries = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                try {
+                    entries.put(String.valueOf(entry.getFileName()),
+                            Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+                } catch (NoSuchFileException e) {
+                    // Deleted while we were scanning, so it's simply not part of this index
+                }
+            }
+        }
+        int size = entries.size();
+        String[] names = new String[size];
+        long[] sizes = new long[size];
+        long[] lastModified = new long[size];
+        int[] fileKeys = new int[size];
+        BitSet directories = new BitSet(size);
+        int i = 0;
+        for (Map.Entry<String, BasicFileAttributes> entry : entries.entrySet()) {
+            BasicFileAttributes attrs = entry.getValue();
+            names[i] = entry.getKey();
+            sizes[i] = attrs.size();
+            lastModified[i] = attrs.lastModifiedTime().toMillis();
+            Object fileKey = attrs.fileKey();
+            fileKeys[i] = fileKey != null ? fileKey.hashCode() : 0;
+            directories.set(i, attrs.isDirectory());
+            i++;
+        }
+        return new DirectoryIndex(names, sizes, lastModified, fileKeys, directories);
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    String name(int i) {
+        return names[i];
+    }
+
+    boolean isDirectory(int i) {
+        return directories.get(i);
+    }
+
+    /**
+     * Compare this (older) index to a newer one of the same directory, by merging both sorted arrays.
+     * Like from a WatchService, directories are CREATED and DELETED, but not MODIFIED.
+     */
+    void diff(DirectoryIndex newer, ChangeCallback callback) {
+        int i = 0;
+        int j = 0;
+        while (i < names.length || j < newer.names.length) {
+            int cmp = i == names.length ? 1 : j == newer.names.length ? -1 : names[i].compareTo(newer.names[j]);
+            if (cmp < 0) {
+                callback.onChange(names[i], ChangeKind.DELETED, isDirectory(i));
+                i++;
+            } else if (cmp > 0) {
+                callback.onChange(newer.names[j], ChangeKind.CREATED, newer.isDirectory(j));
+                j++;
+            } else {
+                if (isDirectory(i) != newer.isDirectory(j)) {
+                    // Replaced e.g. a file by a directory of the same name
+                    callback.onChange(names[i], ChangeKind.DELETED, isDirectory(i));
+                    callback.onChange(names[i], ChangeKind.CREATED, newer.isDirectory(j));
+                } else if (!isDirectory(i) && (sizes[i] != newer.sizes[j] || lastModified[i] != newer.lastModified[j]
+                        || fileKeys[i] != newer.fileKeys[j])) {
+                    callback.onChange(names[i], ChangeKind.MODIFIED, false);
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Names, sizes and last modified times of the (direct) entries of one directory.
+ *
+ * <p>Used to recover from an OVERFLOW, by re-scanning only the affected directory
+ * and comparing it to the previous snapshot of it; and (see {@link PersistentSnapshot})
+ * to find what changed while nobody was watching.
+ *
+ * @author Michael Vorburger.ch
+ */
+// intentionally package local, for now
+class DirectorySnapshot {
+
+    interface ChangeCallback {
+        void onChange(Path fileName, ChangeKind changeKind, boolean isDirectory);
+    }
+
+    // fileKey is the hash of BasicFileAttributes.fileKey() (if any), to notice files replaced by another one of the same size and time;
+    // key is that fileKey itself, to recognize a moved file, but it is not stored by the PersistentSnapshot (and not compared)
+    record FileState(long size, long lastModified, int fileKey, boolean isDirectory, @Nullable Object key) {
+        FileState(long size, long lastModified, int fileKey, boolean isDirectory) {
+            this(size, lastModified, fileKey, isDirectory, null);
+        }
+
+        static FileState of(BasicFileAttributes attrs) {
+            Object fileKey = attrs.fileKey();
+            return new FileState(attrs.size(), attrs.lastModifiedTime().toMillis(), fileKey != null ? fileKey.hashCode() : 0,
+                    attrs.isDirectory(), fileKey);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object other) {
+            return other instanceof FileState state && size == state.size && lastModified == state.lastModified
+                    && fileKey == state.fileKey && isDirectory == state.isDirectory;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified, fileKey, isDirectory);
+        }
+    }
+
+    // Keyed by file name (the relative Path of an entry, like in a WatchEvent context), not an absolute Path
+    private final Map<Path, FileState> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Scan (only) the direct entries of a directory, without recursing into sub-directories.
+     */
+    static DirectorySnapshot scan(Path directory) throws IOException {
+        DirectorySnapshot snapshot = new DirectorySnapshot();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    snapshot.put(entry.getFileName(), attrs);
+                } catch (NoSuchFileException e) {
+                    // Deleted while we were scanning, so it's simply not part of this snapshot
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    void put(Path fileName, BasicFileAttributes attrs) {
+        entries.put(fileName, FileState.of(attrs));
+    }
+
+    @Nullable FileState get(Path fileName) {
+        return entries.get(fileName);
+    }
+
+    void put(Path fileName, FileState state) {
+        entries.put(fileName, state);
+    }
+
+    void remove(Path fileName) {
+        entries.remove(fileName);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    Map<Path, FileState> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Compare this (older) snapshot to a newer one of the same directory.
+     */
+    void diff(DirectorySnapshot newer, ChangeCallback callback) {
+        for (Map.Entry<Path, FileState> oldEntry : entries.entrySet()) {
+            FileState newState = newer.entries.get(oldEntry.getKey());
+            FileState oldState = oldEntry.getValue();
+            if (newState == null) {
+                callback.onChange(oldEntry.getKey(), ChangeKind.DELETED, oldState.isDirectory());
+            } else if (newState.isDirectory() != oldState.isDirectory()) {
+                // Replaced e.g. a file by a directory of the same name
+                callback.onChange(oldEntry.getKey(), ChangeKind.DELETED, oldState.isDirectory());
+                callback.onChange(oldEntry.getKey(), ChangeKind.CREATED, newState.isDirectory());
+            } else if (!newState.isDirectory() && !newState.equals(oldState)) {
+                callback.onChange(oldEntry.getKey(), ChangeKind.MODIFIED, false);
+            }
+        }
+        for (Map.Entry<Path, FileState> newEntry : newer.entries.entrySet()) {
+            if (!entries.containsKey(newEntry.getKey())) {
+                callback.onChange(newEntry.getKey(), ChangeKind.CREATED, newEntry.getValue().isDirectory());
+            }
+        }
+    }
+}
@@ -21,6 +21,8 @@ package ch.vorburger.fswatch;
 
 import java.io.Closeable;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Watch a directory and be notified on your Listener for changes in it.
@@ -41,7 +43,13 @@ public interface DirectoryWatcher extends Closeable {
         DELETED,
 
         /** Directory or file was created. */
-        CREATED
+        CREATED,
+
+        /**
+         * Directory or file was moved (or renamed) within the watched tree, see {@link Listener#onMove(Path, Path)}.
+         * Only if this is one of the eventKinds; otherwise (and to a BatchListener) a move is a DELETED and a CREATED.
+         */
+        MOVED
     }
 
     /**
@@ -55,6 +63,61 @@ public interface DirectoryWatcher extends Closeable {
          * @throws Throwable if anything went wrong
          */
         void onChange(Path path, ChangeKind changeKind) throws Throwable;
+
+        /**
+         * Called back method for a directory or file which was {@link ChangeKind#MOVED} within the watched tree.
+         * When a directory moved, this is called once for it, not for each file in it.
+         * By default, this calls {@link #onChange(Path, ChangeKind)} with DELETED for the source and CREATED for the target.
+         * @param source Path to where the directory or file was
+         * @param target Path to where the directory or file is now
+         * @throws Throwable if anything went wrong
+         */
+        default void onMove(Path source, Path target) throws Throwable {
+            onChange(source, ChangeKind.DELETED);
+            onChange(target, ChangeKind.CREATED);
+        }
+
+        /**
+         * Called back method for a change with its {@link ChangeEvent} (and its attributes).
+         * Watchers call this instead of {@link #onChange(Path, ChangeKind)} or {@link #onMove(Path, Path)},
+         * so that Listeners which wrap others can pass the event along, and share its attributes.
+         * By default, this calls onMove() if it moved, and else onChange().
+         * @param event the change
+         * @throws Throwable if anything went wrong
+         */
+        default void onEvent(ChangeEvent event) throws Throwable {
+            Path source = event.source();
+            if (source != null) {
+                onMove(source, event.path());
+            } else {
+                onChange(event.path(), event.changeKind());
+            }
+        }
+    }
+
+    /**
+     * Listener for change notifications with {@link ChangeEvent}s.
+     */
+    @FunctionalInterface
+    interface EventListener {
+        /**
+         * Called back method.
+         * @param event the change, with the attributes of the path which changed
+         * @throws Throwable if anything went wrong
+         */
+        void onEvent(ChangeEvent event) throws Throwable;
+    }
+
+    /**
+     * Listener for change notifications which are delivered together in one batch.
+     */
+    interface BatchListener {
+        /**
+         * Called back method.
+         * @param changes all paths which changed (in the order they first changed), and how
+         * @throws Throwable if anything went wrong
+         */
+        void onChanges(Map<Path, ChangeKind> changes) throws Throwable;
     }
 
     /**
@@ -73,4 +136,14 @@ public interface DirectoryWatcher extends Closeable {
 
     @Override
     void close(); // do NOT throws (IO)Exception
+
+    /**
+     * Completes when all directories are registered, i.e. when changes anywhere in the watched tree are noticed.
+     * That is already the case when the watcher is built, unless it registers in the background,
+     * see {@link DirectoryWatcherBuilder#awaitRegistration(boolean)}.
+     * @return a future which completes (exceptionally, if registration failed) when all directories are registered
+     */
+    default CompletableFuture<Void> registration() {
+        return CompletableFuture.completedFuture(null);
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ExceptionHandler;
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Predicate;
+
+/**
+ * SPI for alternative implementations of watching a directory tree, e.g. one calling the OS (like Linux inotify) directly.
+ *
+ * <p>Set it with {@link DirectoryWatcherBuilder#backend(DirectoryWatcherBackend)}. If it does not support a path (e.g.
+ * because it's on another OS or file system, or lacks permissions), the builder falls back to the default implementation
+ * based on the java.nio.file.WatchService. The builder still applies the quiet period, event kinds, include and exclude
+ * globs, and everything else to what the backend notifies.
+ *
+ * @author Michael Vorburger.ch
+ */
+public interface DirectoryWatcherBackend {
+
+    /**
+     * Whether this backend can watch this directory, on this OS and file system. Should be cheap.
+     * @param directory the directory to watch
+     * @return true if {@link #watch(Path, Predicate, Listener, ExceptionHandler)} can be called for it
+     */
+    boolean supports(Path directory);
+
+    /**
+     * Start watching a directory and its sub-directories.
+     * @param directory the directory to watch
+     * @param watchDirectory whether to watch a sub-directory (if not, neither are its sub-directories)
+     * @param listener to notify about every change, with an absolute path, from any thread (but never concurrently)
+     * @param exceptionHandler to notify about exceptions, e.g. of the listener
+     * @return the watcher, which stops watching when closed
+     * @throws IOException if the directory cannot be watched
+     */
+    DirectoryWatcher watch(Path directory, Predicate<Path> watchDirectory, Listener listener,
+            ExceptionHandler exceptionHandler) throws IOException;
+}
@@ -24,11 +24,29 @@ import java.io.FileFilter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import ch.vorburger.fswatch.DirectoryWatcher.BatchListener;
 import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.DirectoryWatcher.EventListener;
 import ch.vorburger.fswatch.DirectoryWatcher.ExceptionHandler;
 import ch.vorburger.fswatch.DirectoryWatcher.Listener;
 
@@ -41,14 +59,41 @@ import static java.util.Objects.requireNonNull;
  */
 @SuppressWarnings("hiding")
 public class DirectoryWatcherBuilder {
+    private final static Logger log = LoggerFactory.getLogger(DirectoryWatcherBuilder.class);
 
     protected @Nullable Path path;
     protected @Nullable Listener listener;
+    protected @Nullable BatchListener batchListener;
     protected ExceptionHandler exceptionHandler = new Slf4jLoggingExceptionHandler();
     protected long quietPeriodInMS = 100;
+    protected boolean quietPeriodPerPath = false;
+    protected boolean publishing = false;
+    protected long maxWaitInMS = 0;
     protected @Nullable FileFilter fileFilter;
+    protected final List<String> includeGlobs = new ArrayList<>();
+    protected final List<String> excludeGlobs = new ArrayList<>();
     protected ChangeKind[] eventKinds = { ChangeKind.DELETED, ChangeKind.MODIFIED };
     protected boolean existingFiles = false;
+    protected boolean existingFilesInParallel = false;
+    protected @Nullable Path persistentSnapshot;
+    protected boolean contentHashing = false;
+    protected long stableFileIntervalInMS = 0;
+    protected long stableFileMaxIntervalInMS = 0;
+    protected boolean overflowRecovery = false;
+    protected WatcherMetrics metrics = WatcherMetrics.NONE;
+    protected long pollingIntervalInMS = 0;
+    protected long pollingMaxIntervalInMS = 0;
+    protected @Nullable DirectoryWatcherBackend backend;
+    protected int registrationParallelism = 1;
+    protected boolean awaitRegistration = true;
+    protected @Nullable IntConsumer registrationProgress;
+    protected @Nullable ScheduledExecutorService scheduler;
+    protected @Nullable WatcherHub hub;
+    protected @Nullable Executor dispatchExecutor;
+    protected @Nullable EventQueue eventQueue;
+
+    // The default dispatch executor of the watcher which is being built, shared by all its stages; see getDispatchExecutor()
+    private @Nullable Executor watcherDispatchExecutor;
 
     /**
      * Set the path to watch.
@@ -78,15 +123,75 @@ public class DirectoryWatcherBuilder {
      * @return this
      */
     public DirectoryWatcherBuilder listener(Listener listener) {
-        if (this.listener != null) {
+        if (this.listener != null || this.batchListener != null) {
             throw new IllegalStateException("listener already set");
         }
         this.listener = listener;
         return this;
     }
 
+    /**
+     * Set the listener to be notified of changes, with a {@link ChangeEvent} which carries the watched root,
+     * a sequence number, and the attributes of the path which changed; which are shared with the content hashing,
+     * and read at most once, or not at all if the watcher already read them when it noticed the change.
+     * This is an alternative to {@link #listener(Listener)}.
+     * @param eventListener the listener to be notified of changes
+     * @return this
+     */
+    public DirectoryWatcherBuilder eventListener(EventListener eventListener) {
+        return listener(new Listener() {
+            // For changes notified without an event, e.g. by polling() or after the quietPeriodPerPath()
+            @Override
+            public void onChange(Path path, ChangeKind changeKind) throws Throwable {
+                onEvent(new ChangeEvent(requireNonNull(DirectoryWatcherBuilder.this.path), path, changeKind, null, null));
+            }
+
+            @Override
+            public void onMove(Path source, Path target) throws Throwable {
+                onEvent(new ChangeEvent(requireNonNull(DirectoryWatcherBuilder.this.path), target, ChangeKind.MOVED, source, null));
+            }
+
+            @Override
+            public void onEvent(ChangeEvent event) throws Throwable {
+                eventListener.onEvent(event);
+            }
+        });
+    }
+
+    /**
+     * Publish changes to the Subscribers of a {@link ChangePublisher}, as many as each one requested.
+     * This is an alternative to {@link #listener(Listener)}. Unlike to a listener, every changed path is published,
+     * not only the first one of each quiet period; immediately, because the publisher already merges the changes of
+     * each path which a Subscriber did not request yet; or after the quiet period of each path, with
+     * {@link #quietPeriodPerPath(boolean)}.
+     * @param publisher the publisher, to subscribe to
+     * @return this
+     */
+    public DirectoryWatcherBuilder publisher(ChangePublisher publisher) {
+        eventListener(publisher);
+        publishing = true;
+        return this;
+    }
+
+    /**
+     * Set the listener to be notified of all changes together, after the quiet period.
+     * This is an alternative to {@link #listener(Listener)}, which is notified with only one of the changed paths.
+     * @param batchListener the listener to be notified of changes
+     * @return this
+     */
+    public DirectoryWatcherBuilder batchListener(BatchListener batchListener) {
+        if (this.listener != null || this.batchListener != null) {
+            throw new IllegalStateException("listener already set");
+        }
+        this.batchListener = batchListener;
+        return this;
+    }
+
     /**
      * Set the change kinds to listen for.
+     * With {@link ChangeKind#MOVED}, a directory or file which moved within the watched tree is notified to
+     * {@link Listener#onMove(Path, Path)}, instead of as a DELETED and a CREATED; but not (yet) to a BatchListener,
+     * with {@link #quietPeriodPerPath(boolean)} or an {@link #eventQueue(EventQueue)}, or with {@link #polling(long, long)}.
      * @param eventKinds the change kinds to listen for
      * @return this
      */
@@ -115,6 +220,166 @@ public class DirectoryWatcherBuilder {
         return this;
     }
 
+    /**
+     * Whether to time a separate quiet period for each path (see {@link DebouncingListener}), so that one path which
+     * keeps changing does not delay the notification about all others; and to notify about each changed path, instead
+     * of only about the first one of a quiet period. Defaults to false.
+     * @param quietPeriodPerPath true if yes, false if not
+     * @return this
+     */
+    public DirectoryWatcherBuilder quietPeriodPerPath(boolean quietPeriodPerPath) {
+        this.quietPeriodPerPath = quietPeriodPerPath;
+        return this;
+    }
+
+    /**
+     * Set the maximum time after its first change that a path which keeps changing is notified at the latest,
+     * even if its quiet period did not end yet. Only used with {@link #quietPeriodPerPath(boolean)}.
+     * Defaults to 0, which means to wait for the quiet period, however long that takes.
+     * @param maxWaitInMS the maximum wait in milliseconds, which must be at least the quiet period (or 0)
+     * @return this
+     */
+    public DirectoryWatcherBuilder maxWaitInMS(long maxWaitInMS) {
+        this.maxWaitInMS = maxWaitInMS;
+        return this;
+    }
+
+    /**
+     * Set the scheduler which times the quiet period (and the checks of {@link #stableFiles(long, long)}).
+     * Defaults to one single (daemon) Thread shared by all watchers (which were not given their own scheduler).
+     * Listeners are not notified on it, see {@link #dispatchExecutor(Executor)}.
+     * @param scheduler the scheduler
+     * @return this
+     */
+    public DirectoryWatcherBuilder scheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = requireNonNull(scheduler);
+        return this;
+    }
+
+    /**
+     * Set the executor on which the listener is notified, so that a listener which takes long to handle a change
+     * holds up neither the scheduler nor the watching. Changes of the same path are still passed on in order, one
+     * after the other, but changes of different paths may be handled in parallel (if the executor has several Threads).
+     * Defaults to notifying the listener of each watcher one change after the other, on a Thread of a pool shared
+     * by all watchers (which were not given their own executor), so that a listener which blocks only holds up its own watcher.
+     * @param dispatchExecutor the executor
+     * @return this
+     * @see #dispatchOnVirtualThreads()
+     */
+    public DirectoryWatcherBuilder dispatchExecutor(Executor dispatchExecutor) {
+        this.dispatchExecutor = requireNonNull(dispatchExecutor);
+        return this;
+    }
+
+    /**
+     * Notify the listener on a new virtual Thread for each change (or several successive changes of the same path).
+     * @return this
+     * @see #dispatchExecutor(Executor)
+     */
+    public DirectoryWatcherBuilder dispatchOnVirtualThreads() {
+        ThreadFactory virtualThreadFactory = Thread.ofVirtual().name(DispatchingListener.class.getName() + "-", 0).factory();
+        return dispatchExecutor(task -> virtualThreadFactory.newThread(task).start());
+    }
+
+    /**
+     * Pass changes from the watching to the listener through a bounded queue.
+     * It is drained on the dispatch executor, if one was set, else on the scheduler.
+     * Defaults to none, which means that the watching Thread passes changes on directly.
+     * @param eventQueue the queue, which must not be used by any other watcher
+     * @return this
+     * @see EventQueue
+     */
+    public DirectoryWatcherBuilder eventQueue(EventQueue eventQueue) {
+        this.eventQueue = requireNonNull(eventQueue);
+        return this;
+    }
+
+    /**
+     * Use a shared hub, instead of a new WatchService and Thread for this watcher.
+     * The hub is not closed when the watcher is closed.
+     * @param hub the hub
+     * @return this
+     */
+    public DirectoryWatcherBuilder hub(WatcherHub hub) {
+        this.hub = requireNonNull(hub);
+        return this;
+    }
+
+    /**
+     * Poll, instead of using the WatchService, which does not deliver events on some file systems, like NFS, CIFS
+     * and several FUSE and overlay mounts. Directories in which something changed are polled every intervalInMS,
+     * and directories in which nothing changed less and less often, up to every maxIntervalInMS.
+     * Only supported for directories, not single files.
+     * @param intervalInMS the minimum (and initial) polling interval of every directory, in milliseconds
+     * @param maxIntervalInMS the maximum polling interval of directories in which nothing changes, in milliseconds
+     * @return this
+     */
+    public DirectoryWatcherBuilder polling(long intervalInMS, long maxIntervalInMS) {
+        if (intervalInMS <= 0 || maxIntervalInMS < intervalInMS)
+            throw new IllegalArgumentException("intervalInMS must be > 0 and <= maxIntervalInMS");
+        this.pollingIntervalInMS = intervalInMS;
+        this.pollingMaxIntervalInMS = maxIntervalInMS;
+        return this;
+    }
+
+    /**
+     * Walk and register the directory tree with this many threads, instead of only the one calling build().
+     * Idle threads steal sub-directories from busy ones, which helps for huge trees, especially on slow file systems.
+     * @param parallelism how many threads to use to register directories, default 1
+     * @return this
+     */
+    public DirectoryWatcherBuilder registrationParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be >= 1");
+        this.registrationParallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Whether build() waits until all directories are registered and the first listener notification (including the
+     * {@link #existingFiles(boolean)}) has been sent (which is the default), or returns as soon as the walk started. In the latter case, changes in directories which are already registered are notified while the
+     * others are still being registered, and {@link DirectoryWatcher#registration()} completes when all are.
+     * @param awaitRegistration false to return from build() without waiting for all directories to be registered
+     * @return this
+     */
+    public DirectoryWatcherBuilder awaitRegistration(boolean awaitRegistration) {
+        this.awaitRegistration = awaitRegistration;
+        return this;
+    }
+
+    /**
+     * Be notified about how many directories are registered so far, while initially walking the tree; about every 1000
+     * directories, and once more at the end of the walk. Directories which are created (and registered) later are not
+     * reported. Mostly useful together with {@link #buildAsync()}.
+     * @param registrationProgress called with the number of directories registered so far, from the walking thread
+     * @return this
+     */
+    public DirectoryWatcherBuilder registrationProgress(IntConsumer registrationProgress) {
+        this.registrationProgress = requireNonNull(registrationProgress);
+        return this;
+    }
+
+    /**
+     * Use an alternative implementation to watch the directory (if it supports it), instead of the WatchService.
+     * @param backend the backend
+     * @return this
+     */
+    public DirectoryWatcherBuilder backend(DirectoryWatcherBackend backend) {
+        this.backend = requireNonNull(backend);
+        return this;
+    }
+
+    /**
+     * Set the metrics SPI to notify about what the watcher does internally, e.g. a {@link JmxWatcherMetrics}.
+     * By default, nothing is measured. Note that watchers of single files do not (yet) count directories and events.
+     * @param metrics the metrics to notify
+     * @return this
+     */
+    public DirectoryWatcherBuilder metrics(WatcherMetrics metrics) {
+        this.metrics = requireNonNull(metrics);
+        return this;
+    }
+
     /**
      * Filter out directories you don't want to be watched.
      * @param fileFilter match files that don't need to be watched
@@ -125,6 +390,31 @@ public class DirectoryWatcherBuilder {
         return this;
     }
 
+    /**
+     * Only notify the listener about changes of paths matching any of these globs (like <code>**&#47;*.java</code>).
+     * Globs are matched against paths relative to the watched directory, see {@link java.nio.file.FileSystem#getPathMatcher(String)};
+     * a glob starting with <code>**&#47;</code> also matches at the top level. Can be called several times.
+     * @param globs the globs to include
+     * @return this
+     */
+    public DirectoryWatcherBuilder include(String... globs) {
+        includeGlobs.addAll(Arrays.asList(globs));
+        return this;
+    }
+
+    /**
+     * Don't notify the listener about changes of paths matching any of these globs (like <code>**&#47;*.class</code>),
+     * and don't even watch (or walk) directories matching them, or matching them with <code>&#47;**</code> at the end
+     * (like <code>**&#47;node_modules&#47;**</code>). Unlike {@link #fileFilter(FileFilter)}, this excludes the entire subtree
+     * of such directories. Globs are matched like for {@link #include(String...)}. Can be called several times.
+     * @param globs the globs to exclude
+     * @return this
+     */
+    public DirectoryWatcherBuilder exclude(String... globs) {
+        excludeGlobs.addAll(Arrays.asList(globs));
+        return this;
+    }
+
     /**
      * Whether the Listener should initially be invoked once for each existing file (but not directory).
      * Defaults to false.
@@ -137,34 +427,170 @@ public class DirectoryWatcherBuilder {
         return this;
     }
 
+    /**
+     * Whether the Listener may be invoked about the {@link #existingFiles(boolean)} in parallel, from several threads
+     * of the common ForkJoinPool. The existing files are found while the directories are registered, and delivered
+     * in batches (of up to 1000), so that they don't all have to be held in memory. Only useful if the Listener is
+     * thread safe, and slow (for example because it reads the files). Has no effect on a BatchListener, which gets
+     * each batch in one call. Defaults to false.
+     *
+     * @param inParallel true if yes, false if not
+     * @return this
+     */
+    public DirectoryWatcherBuilder existingFilesInParallel(boolean inParallel) {
+        existingFilesInParallel = inParallel;
+        return this;
+    }
+
+    /**
+     * Whether to recover from an OVERFLOW (when the OS dropped events, typically under heavy load)
+     * by re-scanning the affected directory and notifying the Listener about what changed.
+     * This requires keeping a snapshot of the names, sizes and last modified times of all watched files in memory.
+     * Defaults to false, which means that changes can be lost on an OVERFLOW.
+     *
+     * @param overflowRecovery true if yes, false if not
+     * @return this
+     */
+    public DirectoryWatcherBuilder overflowRecovery(boolean overflowRecovery) {
+        this.overflowRecovery = overflowRecovery;
+        return this;
+    }
+
+    /**
+     * Persist a snapshot of the watched tree (the names, sizes, last modified times and file keys of all files
+     * and directories) to the given file, to notify the Listener about what CREATED, MODIFIED or DELETED while
+     * nobody was watching when a watcher is next built with the same file (e.g. after a restart).
+     * This is not like {@link #existingFiles(boolean)}, which notifies about all files (as MODIFIED).
+     *
+     * <p>The snapshot is kept up to date in memory while watching, like with {@link #overflowRecovery(boolean)}
+     * (which this implies), and regularly stored, and when the watcher is closed. It is not supported
+     * with {@link #polling(long, long)} or a {@link #backend(DirectoryWatcherBackend)}.
+     *
+     * @param file the file to store the snapshot in (and read it from), which should not be in the watched tree
+     * @return this
+     */
+    public DirectoryWatcherBuilder persistentSnapshot(Path file) {
+        this.persistentSnapshot = requireNonNull(file);
+        return this;
+    }
+
+    /**
+     * Whether to drop MODIFIED changes of files whose content did not actually change (e.g. because they were
+     * only touched, or because one write caused several events), by comparing a hash of their content, see
+     * {@link ContentHashingListener}. This reads every modified (small) file, so it's only worth it if the Listener
+     * is (much) more expensive than that. Defaults to false.
+     *
+     * @param contentHashing true if yes, false if not
+     * @return this
+     */
+    public DirectoryWatcherBuilder contentHashing(boolean contentHashing) {
+        this.contentHashing = contentHashing;
+        return this;
+    }
+
+    /**
+     * Only notify about CREATED and MODIFIED files once they are completely written, i.e. once their size and last
+     * modified time did not change for intervalInMS, see {@link StableFileListener}. Files which are still being
+     * written are checked less and less often, up to every maxIntervalInMS. Unlike the quiet period, this
+     * is per file, so a file which is written for a long time does not delay the notification about others.
+     * @param intervalInMS how long the size and last modified time of a file must not change, in milliseconds
+     * @param maxIntervalInMS the maximum interval at which files which are still being written are checked, in milliseconds
+     * @return this
+     */
+    public DirectoryWatcherBuilder stableFiles(long intervalInMS, long maxIntervalInMS) {
+        if (intervalInMS <= 0 || maxIntervalInMS < intervalInMS)
+            throw new IllegalArgumentException("intervalInMS must be > 0 and <= maxIntervalInMS");
+        this.stableFileIntervalInMS = intervalInMS;
+        this.stableFileMaxIntervalInMS = maxIntervalInMS;
+        return this;
+    }
+
     public DirectoryWatcher build() throws IOException {
         // Copy/paste into child class, for null safety; please keep in sync
         if (path == null)
             throw new IllegalStateException("path not set");
         if (!path.toFile().exists())
             throw new IllegalStateException("path does not exist: " + path.toString());
-        if (listener == null)
+        if (listener == null && batchListener == null)
             throw new IllegalStateException("listener not set");
         if (!path.toFile().isDirectory())
             throw new IllegalStateException(
                     "When using DirectoryWatcherBuilder, set path() to a directory, not a file (use FileWatcherBuilder to watch a single file)");
-        DirectoryWatcherImpl watcher = new DirectoryWatcherImpl(true, path, getQuietListener(listener), fileFilter,
-                exceptionHandler, eventKinds);
-        firstListenerNotification();
+        if (persistentSnapshot != null && (pollingIntervalInMS > 0 || backend != null))
+            throw new IllegalStateException("persistentSnapshot() is not (yet) supported with polling() or a backend()");
+        newWatcherDispatchExecutor();
+        Listener wrap = getQueueingListener(getStableFileListener(getContentHashingListener(getQuietListener())));
+        PathFilter pathFilter = getPathFilter(path);
+        DirectoryWatcher watcher = backend != null ? watchWithBackend(backend, path, pathFilter, wrap) : null;
+        if (watcher == null && pollingIntervalInMS > 0) {
+            watcher = new PollingDirectoryWatcher(path, wrap, fileFilter, exceptionHandler, eventKinds, pathFilter,
+                    pollingIntervalInMS, pollingMaxIntervalInMS, metrics.forWatcher());
+        }
+        if (watcher != null) {
+            // Only once all directories are registered, so that existingFiles() doesn't hold up the registration
+            var unused = watcher.registration().thenRun(this::firstListenerNotification);
+            return watcher;
+        }
+        // The registration walk already reads the attributes of all files, so it finds the existingFiles() as well,
+        // instead of walking the entire tree a second time; they are delivered in batches, while still walking.
+        ExistingFilesNotifier notifier = new ExistingFilesNotifier(path, listener, batchListener,
+                existingFilesInParallel, exceptionHandler, getDispatchExecutor());
+        DirectoryWatcherImpl.Options options = new DirectoryWatcherImpl.Options();
+        options.fileFilter = fileFilter;
+        options.eventKinds = eventKinds;
+        options.pathFilter = pathFilter;
+        options.overflowRecovery = overflowRecovery;
+        options.hub = hub;
+        options.metrics = metrics.forWatcher();
+        options.registrationParallelism = registrationParallelism;
+        options.awaitRegistration = awaitRegistration;
+        options.registrationProgress = registrationProgress;
+        options.existingFiles = existingFiles ? notifier::onFile : null;
+        options.scheduler = getScheduler();
+        options.persistentSnapshot = persistentSnapshot != null
+                ? new PersistentSnapshot(persistentSnapshot, path, getScheduler()) : null;
+        watcher = new DirectoryWatcherImpl(path, wrap, exceptionHandler, options);
+        CompletableFuture<Void> notified = watcher.registration().thenCompose(v -> notifier.finish());
+        if (awaitRegistration) {
+            // Like before, the first listener notification has been sent when build() returns
+            notified.join();
+        }
         return watcher;
     }
 
+    /**
+     * Build the watcher, but return it immediately, while the directories are still being registered in the background;
+     * like {@link #build()} with {@link #awaitRegistration(boolean)} false. Its {@link DirectoryWatcher#registration()}
+     * completes when all directories are registered, and the first listener notification is sent then at the latest
+     * (but batches of {@link #existingFiles(boolean)} may already be sent earlier, while still registering). See also {@link #registrationProgress(IntConsumer)}.
+     * @return the new DirectoryWatcher, which may not yet have registered all directories
+     * @throws IOException if the directory cannot be watched at all
+     */
+    public DirectoryWatcher buildAsync() throws IOException {
+        boolean await = awaitRegistration;
+        awaitRegistration = false;
+        try {
+            return build();
+        } finally {
+            awaitRegistration = await;
+        }
+    }
+
     // We intentionally want to first call the listener once for setup, even without any change detected
     protected void firstListenerNotification() {
         if (path == null)
             throw new IllegalStateException("path not set");
+        if (batchListener != null) {
+            firstBatchListenerNotification(path, batchListener);
+            return;
+        }
         if (listener == null)
             throw new IllegalStateException("listener not set");
         try {
             listener.onChange(path, ChangeKind.MODIFIED);
 
             if (existingFiles) {
-                try (Stream<Path> stream = Files.walk(path).filter(Files::isRegularFile)) {
+                try (Stream<Path> stream = Files.walk(path).filter(existingFilesFilter(path))) {
                     stream.forEach(file -> {
                         try {
                             listener.onChange(file, ChangeKind.MODIFIED);
@@ -179,7 +605,204 @@ public class DirectoryWatcherBuilder {
         }
     }
 
+    private void firstBatchListenerNotification(Path path, BatchListener batchListener) {
+        Map<Path, ChangeKind> changes = new LinkedHashMap<>();
+        changes.put(path, ChangeKind.MODIFIED);
+        try {
+            if (existingFiles) {
+                try (Stream<Path> stream = Files.walk(path).filter(existingFilesFilter(path))) {
+                    stream.forEach(file -> changes.put(file, ChangeKind.MODIFIED));
+                }
+            }
+            batchListener.onChanges(Collections.unmodifiableMap(changes));
+        } catch (Throwable e) {
+            exceptionHandler.onException(e);
+        }
+    }
+
+    private Predicate<Path> existingFilesFilter(Path directory) {
+        PathFilter pathFilter = getPathFilter(directory);
+        if (pathFilter == null)
+            return Files::isRegularFile;
+        return file -> Files.isRegularFile(file) && pathFilter.accepts(directory.relativize(file));
+    }
+
+    // Wraps either the listener or the batchListener, whichever one was set
+    protected Listener getQuietListener() {
+        if (batchListener != null && quietPeriodPerPath)
+            return new DebouncingListener(quietPeriodInMS, maxWaitInMS,
+                    getDispatchingBatchListener(getMeasuredBatchListener(batchListener)), exceptionHandler,
+                    getScheduler(), metrics);
+        if (batchListener != null)
+            return new CoalescingQuietPeriodListener(quietPeriodInMS,
+                    getDispatchingBatchListener(getMeasuredBatchListener(batchListener)), exceptionHandler,
+                    getScheduler(), metrics);
+        if (listener == null)
+            throw new IllegalStateException("listener not set");
+        return getQuietListener(listener);
+    }
+
     protected Listener getQuietListener(Listener listenerToWrap) {
-        return new QuietPeriodListener(quietPeriodInMS, listenerToWrap, exceptionHandler);
+        if (quietPeriodPerPath)
+            return new DebouncingListener(quietPeriodInMS, maxWaitInMS,
+                    getDispatchingListener(getMeasuredListener(listenerToWrap)), exceptionHandler, getScheduler(), metrics);
+        if (publishing)
+            // The QuietPeriodListener would only pass on the first of the changed paths, and the others would be lost
+            return getDispatchingListener(getMeasuredListener(listenerToWrap));
+        return new QuietPeriodListener(quietPeriodInMS, getDispatchingListener(getMeasuredListener(listenerToWrap)),
+                exceptionHandler, getScheduler(), metrics);
+    }
+
+    // Only wraps if there are metrics, so that there is no overhead without
+    protected Listener getMeasuredListener(Listener listenerToWrap) {
+        if (metrics == WatcherMetrics.NONE)
+            return listenerToWrap;
+        return new Listener() {
+            @Override
+            public void onChange(Path path, ChangeKind changeKind) throws Throwable {
+                long startNanos = System.nanoTime();
+                try {
+                    listenerToWrap.onChange(path, changeKind);
+                } finally {
+                    metrics.listenerInvoked(System.nanoTime() - startNanos);
+                }
+            }
+
+            @Override
+            public void onMove(Path source, Path target) throws Throwable {
+                long startNanos = System.nanoTime();
+                try {
+                    listenerToWrap.onMove(source, target);
+                } finally {
+                    metrics.listenerInvoked(System.nanoTime() - startNanos);
+                }
+            }
+
+            @Override
+            public void onEvent(ChangeEvent event) throws Throwable {
+                long startNanos = System.nanoTime();
+                try {
+                    listenerToWrap.onEvent(event);
+                } finally {
+                    metrics.listenerInvoked(System.nanoTime() - startNanos);
+                }
+            }
+        };
+    }
+
+    protected BatchListener getMeasuredBatchListener(BatchListener listenerToWrap) {
+        if (metrics == WatcherMetrics.NONE)
+            return listenerToWrap;
+        return changes -> {
+            long startNanos = System.nanoTime();
+            try {
+                listenerToWrap.onChanges(changes);
+            } finally {
+                metrics.listenerInvoked(System.nanoTime() - startNanos);
+            }
+        };
+    }
+
+    protected Listener getQueueingListener(Listener listenerToWrap) {
+        if (eventQueue == null)
+            return listenerToWrap;
+        return eventQueue.attach(listenerToWrap, getDispatchExecutor(), exceptionHandler);
+    }
+
+    // Before the quiet period, so that changes it drops don't (re)start it, and thus don't delay any real ones;
+    // but on the dispatch executor, so that reading the files doesn't block the (shared) thread which watches
+    protected Listener getContentHashingListener(Listener listenerToWrap) {
+        if (!contentHashing)
+            return listenerToWrap;
+        return getDispatchingListener(new ContentHashingListener(listenerToWrap,
+                ContentHashingListener.DEFAULT_MAX_FILE_SIZE, ContentHashingListener.DEFAULT_CACHE_SIZE, metrics));
+    }
+
+    // Before the content hashing, so that it only reads files which are completely written
+    protected Listener getStableFileListener(Listener listenerToWrap) {
+        if (stableFileIntervalInMS <= 0)
+            return listenerToWrap;
+        return new StableFileListener(stableFileIntervalInMS, stableFileMaxIntervalInMS, listenerToWrap,
+                exceptionHandler, getScheduler(), getDispatchExecutor(), metrics);
+    }
+
+    protected Listener getDispatchingListener(Listener listenerToWrap) {
+        return new DispatchingListener(getDispatchExecutor(), listenerToWrap, exceptionHandler);
+    }
+
+    protected BatchListener getDispatchingBatchListener(BatchListener listenerToWrap) {
+        // Batches are notified one after the other, because they may well contain changes of the same paths
+        SerialExecutor serialExecutor = new SerialExecutor(getDispatchExecutor());
+        return changes -> serialExecutor.execute(listenerToWrap, () -> {
+            try {
+                listenerToWrap.onChanges(changes);
+            } catch (Throwable e) {
+                exceptionHandler.onException(e);
+            }
+        });
+    }
+
+    // Returns null if the backend cannot watch the directory, to fall back to our own implementations
+    private @Nullable DirectoryWatcher watchWithBackend(DirectoryWatcherBackend backend, Path directory,
+            @Nullable PathFilter pathFilter, Listener listenerToWrap) {
+        if (!backend.supports(directory)) {
+            log.info("{} does not support {}, so using the WatchService instead", backend, directory);
+            return null;
+        }
+        try {
+            return backend.watch(directory, getWatchDirectoryPredicate(directory, pathFilter),
+                    getFilteringListener(directory, pathFilter, listenerToWrap), exceptionHandler);
+        } catch (IOException | RuntimeException e) {
+            log.warn("{} failed to watch {}, so using the WatchService instead", backend, directory, e);
+            return null;
+        }
+    }
+
+    // For a DirectoryWatcherBackend; which unlike DirectoryWatcherImpl also skips sub-directories of the fileFilter
+    private Predicate<Path> getWatchDirectoryPredicate(Path directory, @Nullable PathFilter pathFilter) {
+        FileFilter fileFilter = this.fileFilter;
+        return dir -> (fileFilter == null || !fileFilter.accept(dir.toFile())) && (pathFilter == null
+                || dir.equals(directory) || !pathFilter.isExcludedDirectory(directory.relativize(dir)));
+    }
+
+    // For a DirectoryWatcherBackend, which (unlike our own implementations) notifies about all changes
+    private Listener getFilteringListener(Path directory, @Nullable PathFilter pathFilter, Listener listenerToWrap) {
+        Set<ChangeKind> kinds = eventKinds.length == 0 ? EnumSet.noneOf(ChangeKind.class) : EnumSet.copyOf(Arrays.asList(eventKinds));
+        return (changedPath, changeKind) -> {
+            if (kinds.contains(changeKind)
+                    && (pathFilter == null || pathFilter.accepts(directory.relativize(changedPath)))) {
+                listenerToWrap.onChange(changedPath, changeKind);
+            }
+        };
+    }
+
+    // Compiled once per build(), and then only matched
+    @Nullable PathFilter getPathFilter(Path directory) {
+        if (includeGlobs.isEmpty() && excludeGlobs.isEmpty())
+            return null;
+        return PathFilter.compile(directory.getFileSystem(), includeGlobs, excludeGlobs);
+    }
+
+    // Not the scheduler, so that neither a slow listener, nor reading files, delays the quiet periods of all watchers.
+    // By default one serial executor per watcher, which all stages share, so that its listener is never called concurrently.
+    protected Executor getDispatchExecutor() {
+        if (dispatchExecutor != null) {
+            return dispatchExecutor;
+        }
+        Executor executor = watcherDispatchExecutor;
+        if (executor == null) {
+            executor = DefaultScheduler.newSerialExecutor();
+            watcherDispatchExecutor = executor;
+        }
+        return executor;
+    }
+
+    // Each watcher built gets its own default dispatch executor, see getDispatchExecutor()
+    void newWatcherDispatchExecutor() {
+        watcherDispatchExecutor = null;
+    }
+
+    protected ScheduledExecutorService getScheduler() {
+        return scheduler != null ? scheduler : DefaultScheduler.instance();
     }
 }
@@ -19,27 +19,42 @@
  */
 package ch.vorburger.fswatch;
 
-import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import java.io.FileFilter;
 import java.io.IOException;
-import java.nio.file.ClosedWatchServiceException;
-import java.nio.file.FileSystems;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchEvent.Kind;
 import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import ch.vorburger.fswatch.DirectorySnapshot.FileState;
 
 import org.jspecify.annotations.Nullable;
 import org.slf4j.Logger;
@@ -53,108 +68,541 @@ import org.slf4j.LoggerFactory;
 // intentionally package local, for now
 class DirectoryWatcherImpl implements DirectoryWatcher {
     private final static Logger log = LoggerFactory.getLogger(DirectoryWatcherImpl.class);
+    private final static int PROGRESS_INTERVAL = 1000;
+    // How long a DELETED (with a known file key) waits for a CREATED of the same file, at most, to be a MOVED
+    private final static long MOVE_WINDOW_NANOS = 100_000_000;
 
-    protected final WatchService watcher = FileSystems.getDefault().newWatchService(); // better final, as it will be accessed by both threads (normally OK either way, but still)
+    protected final WatcherHub hub;
     protected final Thread thread;
-    protected final List<ChangeKind> changeKindsList = new ArrayList<>();
+    protected final Set<ChangeKind> changeKinds;
+    protected final WatchKeyRegistry registry;
+
+    private final boolean ownHub;
+    private final Path watchBasePath;
+    private final boolean watchSubDirectories;
+    private final Listener listener;
+    private final @Nullable FileFilter fileFilter;
+    private final @Nullable PathFilter pathFilter;
+    private final ExceptionHandler exceptionHandler;
+    private final WatcherMetrics metrics;
+    private final CompletableFuture<Void> registration;
+    private final @Nullable IntConsumer registrationProgress;
+    private volatile boolean closed;
+
+    // Only used if overflowRecovery is enabled, otherwise always empty
+    private final boolean overflowRecovery;
+    private final Map<Path, DirectorySnapshot> snapshots = new ConcurrentHashMap<>();
+    private final @Nullable PersistentSnapshot persistentSnapshot;
+
+    // Only used if MOVED is one of the changeKinds; keyed by their file key; guarded by itself, because it's used
+    // on the hub's Thread, and by flushPendingMoves() on the scheduler
+    private final boolean moves;
+    private final Map<Object, PendingMove> pendingMoves = new HashMap<>();
+    private final @Nullable ScheduledExecutorService scheduler;
+    private @Nullable ScheduledFuture<?> pendingMovesFlush; // guarded by pendingMoves
+
+    private record PendingMove(Path source, FileState state, long deletedNanos) { }
+
+    private final WatcherHub.Handler handler = new WatcherHub.Handler() {
+        @Override
+        public void onEvents(WatchKey key, List<WatchEvent<?>> events) {
+            if (moves) {
+                // flushPendingMoves() notifies the listener as well, but never at the same time
+                synchronized (pendingMoves) {
+                    processEvents(key, events);
+                }
+            } else {
+                processEvents(key, events);
+            }
+        }
+
+        @Override
+        public void onInvalid(WatchKey key) {
+            Path removed = registry.remove(key);
+            if (removed != null) {
+                snapshots.remove(removed);
+                snapshotChanged();
+                metrics.directoriesRegistered(registry.size());
+                log.trace("WatchKey no longer valid, dropped: {}", removed);
+            }
+        }
+
+        @Override
+        public void onException(Throwable t) {
+            exceptionHandler.onException(t);
+        }
+    };
+
+    /**
+     * Everything optional about how a DirectoryWatcherImpl watches, with the same defaults as the DirectoryWatcherBuilder;
+     * so that adding another option does not change the constructor, and all code which calls it.
+     */
+    static final class Options {
+        boolean watchSubDirectories = true;
+        @Nullable FileFilter fileFilter;
+        ChangeKind[] eventKinds = { ChangeKind.MODIFIED, ChangeKind.DELETED };
+        @Nullable PathFilter pathFilter;
+        boolean overflowRecovery;
+        @Nullable WatcherHub hub;
+        WatcherMetrics metrics = WatcherMetrics.NONE;
+        int registrationParallelism = 1;
+        boolean awaitRegistration = true;
+        @Nullable IntConsumer registrationProgress;
+        @Nullable Consumer<Path> existingFiles;
+        @Nullable PersistentSnapshot persistentSnapshot;
+        @Nullable ScheduledExecutorService scheduler; // if null, the DefaultScheduler
+    }
 
     protected DirectoryWatcherImpl(boolean watchSubDirectories, final Path watchBasePath, final Listener listener,
             FileFilter fileFilter, ExceptionHandler exceptionHandler) throws IOException {
-        this(watchSubDirectories, watchBasePath, listener, fileFilter, exceptionHandler,
-                new ChangeKind[] { ChangeKind.MODIFIED, ChangeKind.DELETED });
+        this(watchBasePath, listener, exceptionHandler, options(watchSubDirectories, fileFilter));
     }
 
-    // protected because typical code should use the DirectoryWatcherBuilder instead of this directly
-    protected DirectoryWatcherImpl(boolean watchSubDirectories, final Path watchBasePath, final Listener listener,
-            @Nullable FileFilter fileFilter, ExceptionHandler exceptionHandler, ChangeKind[] eventKinds)
-            throws IOException {
+    private static Options options(boolean watchSubDirectories, FileFilter fileFilter) {
+        Options options = new Options();
+        options.watchSubDirectories = watchSubDirectories;
+        options.fileFilter = fileFilter;
+        return options;
+    }
+
+    // package local because typical code should use the DirectoryWatcherBuilder instead of this directly
+    DirectoryWatcherImpl(final Path watchBasePath, final Listener listener, ExceptionHandler exceptionHandler,
+            Options options) throws IOException {
+        boolean watchSubDirectories = options.watchSubDirectories;
+        ChangeKind[] eventKinds = options.eventKinds;
+        boolean overflowRecovery = options.overflowRecovery;
+        @Nullable WatcherHub sharedHub = options.hub;
+        int registrationParallelism = options.registrationParallelism;
+        boolean awaitRegistration = options.awaitRegistration;
+        @Nullable Consumer<Path> existingFiles = options.existingFiles;
+        @Nullable PersistentSnapshot persistentSnapshot = options.persistentSnapshot;
         if (!watchBasePath.toFile().isDirectory()) {
             throw new IllegalArgumentException("Not a directory: " + watchBasePath);
         }
-        changeKindsList.addAll(Arrays.asList(eventKinds));
+        changeKinds = eventKinds.length == 0 ? EnumSet.noneOf(ChangeKind.class) : EnumSet.copyOf(Arrays.asList(eventKinds));
+        this.watchBasePath = watchBasePath;
+        this.registry = new WatchKeyRegistry(watchBasePath);
+        this.watchSubDirectories = watchSubDirectories;
+        this.listener = listener;
+        this.fileFilter = options.fileFilter;
+        this.pathFilter = options.pathFilter;
+        this.exceptionHandler = exceptionHandler;
+        // The persistentSnapshot is simply the snapshots of overflowRecovery stored to a file, so it implies it;
+        // and the file keys in the snapshots are needed to know what a DELETED was, to pair it with a CREATED.
+        moves = changeKinds.contains(ChangeKind.MOVED);
+        this.overflowRecovery = overflowRecovery || persistentSnapshot != null || moves;
+        this.persistentSnapshot = persistentSnapshot;
+        this.metrics = options.metrics;
+        this.registrationProgress = options.registrationProgress;
+        this.scheduler = options.scheduler;
 
-        register(watchSubDirectories, watchBasePath, fileFilter);
-        Runnable r = () -> {
-            for (;;) {
-                WatchKey key;
-                try {
-                    key = watcher.take();
-                } catch (ClosedWatchServiceException e) {
-                    log.debug(
-                            "WatchService take() interrupted by ClosedWatchServiceException, terminating Thread (as planned).");
-                    return;
-                } catch (InterruptedException e) {
-                    log.debug("Thread InterruptedException, terminating (as planned, if caused by close()).");
-                    return;
+        if (sharedHub != null) {
+            hub = sharedHub;
+            ownHub = false;
+        } else {
+            // Without a shared hub, every watcher has its own WatchService and Thread (like it always used to)
+            hub = new WatcherHub(DirectoryWatcherImpl.class.getSimpleName() + ": " + watchBasePath, exceptionHandler);
+            ownHub = true;
+        }
+        thread = hub.thread;
+        @Nullable Map<Path, DirectorySnapshot> previousSnapshots = persistentSnapshot != null ? persistentSnapshot.load() : null;
+        if (watchSubDirectories && (registrationParallelism > 1 || !awaitRegistration)) {
+            registration = registerAllInParallel(watchBasePath, registrationParallelism, existingFiles);
+            if (persistentSnapshot != null) {
+                var unused = registration.thenRun(() -> registered(persistentSnapshot, previousSnapshots));
+            }
+            if (awaitRegistration) {
+                awaitRegistration();
+            }
+            return;
+        }
+        try {
+            register(watchSubDirectories, watchBasePath, existingFiles);
+            registration = CompletableFuture.completedFuture(null);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        if (persistentSnapshot != null) {
+            registered(persistentSnapshot, previousSnapshots);
+        }
+    }
+
+    // Only once all directories are registered (and have a snapshot), so that the comparison is complete
+    private void registered(PersistentSnapshot persistentSnapshot, @Nullable Map<Path, DirectorySnapshot> previousSnapshots) {
+        if (closed) {
+            return;
+        }
+        if (previousSnapshots != null) {
+            notifyChangesSince(previousSnapshots);
+        }
+        persistentSnapshot.storePeriodically(this::storeSnapshot);
+    }
+
+    /**
+     * Notify the listener about everything that changed since the (persisted) previous snapshots were taken,
+     * compared to the (now complete) current snapshots. New directories only have a current, and deleted ones
+     * only a previous snapshot, so all of their entries were CREATED respectively DELETED.
+     */
+    private void notifyChangesSince(Map<Path, DirectorySnapshot> previousSnapshots) {
+        for (Map.Entry<Path, DirectorySnapshot> current : snapshots.entrySet()) {
+            Path directory = current.getKey();
+            DirectorySnapshot previous = previousSnapshots.getOrDefault(directory, new DirectorySnapshot());
+            previous.diff(current.getValue(),
+                    (fileName, changeKind, isDirectory) -> notifyListener(directory.resolve(fileName), changeKind));
+        }
+        for (Map.Entry<Path, DirectorySnapshot> previous : previousSnapshots.entrySet()) {
+            Path directory = previous.getKey();
+            if (!snapshots.containsKey(directory)) {
+                previous.getValue().diff(new DirectorySnapshot(),
+                        (fileName, changeKind, isDirectory) -> notifyListener(directory.resolve(fileName), changeKind));
+            }
+        }
+    }
+
+    private void storeSnapshot() {
+        if (persistentSnapshot == null) {
+            return;
+        }
+        try {
+            persistentSnapshot.store(snapshots);
+        } catch (IOException | RuntimeException e) {
+            exceptionHandler.onException(e);
+        }
+    }
+
+    private void snapshotChanged() {
+        if (persistentSnapshot != null) {
+            persistentSnapshot.changed();
+        }
+    }
+
+    private void awaitRegistration() throws IOException {
+        try {
+            registration.join();
+        } catch (CompletionException e) {
+            close();
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> registration() {
+        return registration.copy();
+    }
+
+    // package local (instead of private) only for the EventHotPathBenchmark, and DirectoryWatcherImplTest;
+    // with MOVED in the changeKinds, the caller must hold the pendingMoves lock (like the handler does)
+    void processEvents(WatchKey key, List<WatchEvent<?>> events) {
+        Path watchKeyWatchablePath = (Path) key.watchable();
+        boolean recovered = false;
+        // We have a polled event, now we traverse it and receive all the states from it
+        for (WatchEvent<?> event : events) {
+
+            Kind<?> kind = event.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                metrics.overflow();
+                if (!overflowRecovery) {
+                    log.error("Received {} for {}, so some changes were lost (use overflowRecovery to re-scan)",
+                            kind.name(), watchKeyWatchablePath);
+                } else if (!recovered) {
+                    // Several OVERFLOW for the same key in one batch still only need one re-scan
+                    recover(watchKeyWatchablePath);
+                    recovered = true;
                 }
-                Path watchKeyWatchablePath = (Path) key.watchable();
-                // We have a polled event, now we traverse it and receive all the states from it
-                for (WatchEvent<?> event : key.pollEvents()) {
-
-                    Kind<?> kind = event.kind();
-                    if (kind == StandardWatchEventKinds.OVERFLOW) {
-                        // TODO Not sure how to correctly "handle" an Overflow.. ?
-                        log.error("Received {} (TODO how to handle?)", kind.name());
-                        continue;
-                    }
+                continue;
+            }
 
-                    Path relativePath = (Path) event.context();
-                    if (relativePath == null) {
-                        log.error("Received {} but event.context() == null: {}", kind.name(), event);
-                        continue;
-                    }
-                    Path absolutePath = watchKeyWatchablePath.resolve(relativePath);
-                    log.trace("Received {} for: {}", kind.name(), absolutePath);
+            Path relativePath = (Path) event.context();
+            if (relativePath == null) {
+                log.error("Received {} but event.context() == null: {}", kind.name(), event);
+                continue;
+            }
+            ChangeKind changeKind = ChangeKinds.of(kind);
+            metrics.eventReceived(changeKind);
+            boolean notify = changeKinds.contains(changeKind);
+            if (!notify) {
+                metrics.eventFiltered(changeKind);
+            }
 
-                    if (kind == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(absolutePath)) { // don't NOFOLLOW_LINKS
-                        try {
-                            register(watchSubDirectories, watchBasePath, fileFilter);
-                        } catch (IOException e) {
-                            exceptionHandler.onException(e);
-                        }
-                    }
+            // Only resolve the absolute path of an event (and only stat it) if something is going to use it
+            boolean mayBeRegisteredDirectory = changeKind == ChangeKind.DELETED && registry.hasChildren(watchKeyWatchablePath);
+            boolean mayBeNewDirectory = changeKind == ChangeKind.CREATED && watchSubDirectories;
+            if (!notify && !mayBeRegisteredDirectory && !mayBeNewDirectory && !overflowRecovery) {
+                continue;
+            }
+            Path absolutePath = watchKeyWatchablePath.resolve(relativePath);
+            if (log.isTraceEnabled()) {
+                log.trace("Received {} for: {}", kind.name(), absolutePath);
+            }
 
-                    try {
-                        ChangeKind ourKind = null;
-                        if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
-                            ourKind = ChangeKind.CREATED;
-                        } else if (kind == StandardWatchEventKinds.ENTRY_MODIFY) {
-                            ourKind = ChangeKind.MODIFIED;
-                        } else {
-                            ourKind = ChangeKind.DELETED;
-                        }
-                        if (changeKindsList.contains(ourKind)) { // Only send the evnts that the client is interested in
-                            listener.onChange(absolutePath, ourKind);
-                        }
-                    } catch (Throwable e) {
-                        exceptionHandler.onException(e);
-                    }
+            // What it was (before updating the snapshot), to recognize it if it's CREATED again elsewhere
+            @Nullable FileState deleted = moves && changeKind == ChangeKind.DELETED
+                    ? snapshotState(watchKeyWatchablePath, relativePath) : null;
+            // Read (at most) once, for the snapshot, to recognize new directories, and for the listener
+            @Nullable BasicFileAttributes attributes = overflowRecovery
+                    ? updateSnapshot(watchKeyWatchablePath, relativePath, absolutePath) : null;
+            if (attributes != null && attributes.isSymbolicLink()) {
+                attributes = null; // the listener gets the attributes of what the link points to
+            }
+
+            if (mayBeRegisteredDirectory && registry.containsSubtree(absolutePath)) {
+                cancelSubtree(absolutePath);
+            }
 
+            if (mayBeNewDirectory && !isExcludedDirectory(absolutePath) && (attributes != null ? attributes.isDirectory() : Files.isDirectory(absolutePath))) { // don't NOFOLLOW_LINKS
+                try {
+                    // Only walk the newly created subtree, not the entire tree from watchBasePath again
+                    registerAll(absolutePath, null, false);
+                } catch (IOException e) {
+                    exceptionHandler.onException(e);
+                }
+            }
+
+            boolean moved = moves && changeKind == ChangeKind.CREATED
+                    && notifyMoved(watchKeyWatchablePath, relativePath, absolutePath);
+            @Nullable Object deletedFileKey = deleted != null ? deleted.key() : null;
+            if (deleted != null && deletedFileKey != null) {
+                // Only notified once it's clear that it was not moved, see notifyPendingMoves()
+                holdBack(deletedFileKey, new PendingMove(absolutePath, deleted, System.nanoTime()));
+            } else if (notify && !moved) {
+                if (moves && changeKind == ChangeKind.CREATED) {
+                    // A new file where one was just deleted, so that DELETED comes first
+                    notifyPendingMove(absolutePath);
                 }
-                key.reset();
+                notifyListener(absolutePath, changeKind, attributes);
+            }
+        }
+        if (!pendingMoves.isEmpty()) {
+            // Not only when the flush is due, but already now, if they're older than the MOVE_WINDOW
+            notifyPendingMoves();
+        }
+    }
+
+    private @Nullable FileState snapshotState(Path directory, Path relativePath) {
+        DirectorySnapshot snapshot = snapshots.get(directory);
+        return snapshot != null ? snapshot.get(relativePath) : null;
+    }
+
+    // Returns whether what was CREATED is what was DELETED just before, and if so notifies the listener that it MOVED
+    private boolean notifyMoved(Path directory, Path relativePath, Path target) {
+        FileState created = snapshotState(directory, relativePath);
+        @Nullable Object createdFileKey = created != null ? created.key() : null;
+        if (created == null || createdFileKey == null) {
+            return false;
+        }
+        PendingMove pendingMove = pendingMoves.get(createdFileKey);
+        if (pendingMove == null || !isSame(pendingMove.state(), created)) {
+            return false;
+        }
+        pendingMoves.remove(createdFileKey);
+        Path source = pendingMove.source();
+        if (pathFilter != null && (!pathFilter.accepts(watchBasePath.relativize(source))
+                || !pathFilter.accepts(watchBasePath.relativize(target)))) {
+            // Moved from or to a path which is not watched, so that's just a DELETED or CREATED (if anything)
+            notifyHeldBack(source, ChangeKind.DELETED);
+            notifyHeldBack(target, ChangeKind.CREATED);
+            return true;
+        }
+        try {
+            listener.onEvent(new ChangeEvent(watchBasePath, target, ChangeKind.MOVED, source, null));
+        } catch (Throwable e) {
+            exceptionHandler.onException(e);
+        }
+        return true;
+    }
+
+    // A moved file keeps its size and last modified time, while a new one which happens to reuse a file key rarely does
+    private static boolean isSame(FileState deleted, FileState created) {
+        if (deleted.isDirectory() || created.isDirectory()) {
+            return deleted.isDirectory() == created.isDirectory();
+        }
+        return deleted.equals(created);
+    }
+
+    private void holdBack(Object fileKey, PendingMove pendingMove) {
+        PendingMove previous = pendingMoves.put(fileKey, pendingMove);
+        if (previous != null) {
+            // File keys (like inode numbers) are reused, so that was another file, which was deleted and not moved
+            notifyHeldBack(previous.source(), ChangeKind.DELETED);
+        }
+        schedulePendingMovesFlush();
+    }
+
+    // Notify DELETED for the DELETED which no CREATED arrived for within the MOVE_WINDOW, so they were not moved
+    private void notifyPendingMoves() {
+        long deletedBeforeNanos = System.nanoTime() - MOVE_WINDOW_NANOS;
+        for (Iterator<PendingMove> it = pendingMoves.values().iterator(); it.hasNext();) {
+            PendingMove pendingMove = it.next();
+            if (pendingMove.deletedNanos() - deletedBeforeNanos <= 0) {
+                it.remove();
+                notifyHeldBack(pendingMove.source(), ChangeKind.DELETED);
+            }
+        }
+    }
+
+    // Notify the DELETED of source right away, if it's held back
+    private void notifyPendingMove(Path source) {
+        for (Iterator<PendingMove> it = pendingMoves.values().iterator(); it.hasNext();) {
+            PendingMove pendingMove = it.next();
+            if (pendingMove.source().equals(source)) {
+                it.remove();
+                notifyHeldBack(source, ChangeKind.DELETED);
+            }
+        }
+    }
+
+    // Per watcher, because with a WatcherHub shared by other (busy) watchers, this watcher may not get any more events
+    // for a long time; so we cannot wait for one, nor for the WatcherHub to become idle.
+    private void schedulePendingMovesFlush() {
+        if (pendingMovesFlush != null || pendingMoves.isEmpty()) {
+            return;
+        }
+        long nowNanos = System.nanoTime();
+        long delayNanos = MOVE_WINDOW_NANOS;
+        for (PendingMove pendingMove : pendingMoves.values()) {
+            delayNanos = Math.min(delayNanos, pendingMove.deletedNanos() + MOVE_WINDOW_NANOS - nowNanos);
+        }
+        delayNanos = Math.max(0, delayNanos);
+        ScheduledExecutorService timer = scheduler != null ? scheduler : DefaultScheduler.instance();
+        pendingMovesFlush = timer.schedule(this::flushPendingMoves, delayNanos, NANOSECONDS);
+    }
+
+    // On the scheduler; it only notifies DELETED, which the listeners before the dispatching one handle quickly
+    private void flushPendingMoves() {
+        synchronized (pendingMoves) {
+            pendingMovesFlush = null;
+            if (closed) {
+                return;
+            }
+            try {
+                notifyPendingMoves();
+                schedulePendingMovesFlush();
+            } catch (RuntimeException e) {
+                exceptionHandler.onException(e);
+            }
+        }
+    }
+
+    private void notifyListener(Path absolutePath, ChangeKind changeKind) {
+        notifyListener(absolutePath, changeKind, null);
+    }
+
+    // For an event which processEvents() held back; if its kind was not requested, it already counted it as filtered
+    private void notifyHeldBack(Path absolutePath, ChangeKind changeKind) {
+        if (changeKinds.contains(changeKind)) {
+            notifyListener(absolutePath, changeKind, null);
+        }
+    }
+
+    private void notifyListener(Path absolutePath, ChangeKind changeKind, @Nullable BasicFileAttributes attributes) {
+        if (pathFilter != null && !pathFilter.accepts(watchBasePath.relativize(absolutePath))) {
+            return;
+        }
+        try {
+            if (changeKinds.contains(changeKind)) { // Only send the events that the client is interested in
+                listener.onEvent(new ChangeEvent(watchBasePath, absolutePath, changeKind, null, attributes));
+            } else {
+                metrics.eventFiltered(changeKind);
             }
+        } catch (Throwable e) {
+            exceptionHandler.onException(e);
+        }
+    }
 
-        };
-        String threadName = DirectoryWatcherImpl.class.getSimpleName() + ": " + watchBasePath;
-        thread = new Thread(r, threadName);
-        thread.setDaemon(true);
-        // Because we're catch-ing expected exceptions above, this normally
-        // should never be needed, but still be better safe than sorry.. ;-)
-        thread.setUncaughtExceptionHandler((t, e) -> exceptionHandler.onException(e));
-        thread.start();
+    private void cancelSubtree(Path directory) {
+        List<WatchKey> removed = registry.removeSubtree(directory);
+        for (WatchKey key : removed) {
+            hub.release(key, handler);
+            snapshots.remove((Path) key.watchable());
+        }
+        snapshotChanged();
+        metrics.directoriesRegistered(registry.size());
+        log.trace("Cancelled {} WatchKey/s for deleted: {}", removed.size(), directory);
     }
 
-    private void register(boolean watchSubDirectories, final Path path, @Nullable FileFilter fileFilter)
+    // Returns the attributes (of the link itself, not following it) read for the snapshot, if any
+    private @Nullable BasicFileAttributes updateSnapshot(Path directory, Path relativePath, Path absolutePath) {
+        DirectorySnapshot snapshot = snapshots.get(directory);
+        if (snapshot == null) {
+            return null;
+        }
+        @Nullable BasicFileAttributes attributes = null;
+        try {
+            attributes = Files.readAttributes(absolutePath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            snapshot.put(relativePath, attributes);
+        } catch (NoSuchFileException e) {
+            snapshot.remove(relativePath);
+        } catch (IOException e) {
+            exceptionHandler.onException(e);
+        }
+        snapshotChanged();
+        return attributes;
+    }
+
+    /**
+     * Recover from an OVERFLOW, by re-scanning (only) the directory of the WatchKey which overflowed,
+     * and notifying the listener of what changed compared to the last snapshot we have of it. This
+     * is at most as expensive as a re-walk of the whole tree, even if all keys overflow at once.
+     */
+    private void recover(Path directory) {
+        DirectorySnapshot previous = snapshots.get(directory);
+        if (previous == null) {
+            // Not a directory we've registered, or one that's gone by now
+            log.warn("Received OVERFLOW for {} but have no snapshot of it, cannot recover", directory);
+            return;
+        }
+        DirectorySnapshot current;
+        try {
+            current = DirectorySnapshot.scan(directory);
+        } catch (IOException e) {
+            exceptionHandler.onException(e);
+            return;
+        }
+        snapshots.put(directory, current);
+        snapshotChanged();
+        log.debug("Received OVERFLOW for {}, re-scanned {} entries", directory, current.size());
+        previous.diff(current, (fileName, changeKind, isDirectory) -> {
+            Path absolutePath = directory.resolve(fileName);
+            if (isDirectory && changeKind == ChangeKind.DELETED) {
+                cancelSubtree(absolutePath);
+            } else if (isDirectory && changeKind == ChangeKind.CREATED && watchSubDirectories) {
+                try {
+                    registerAll(absolutePath, null, false);
+                } catch (IOException e) {
+                    exceptionHandler.onException(e);
+                }
+            }
+            notifyListener(absolutePath, changeKind);
+        });
+    }
+
+    private void register(boolean watchSubDirectories, final Path path, @Nullable Consumer<Path> existingFiles)
             throws IOException {
         if (watchSubDirectories) {
-            registerAll(path, fileFilter);
+            registerAll(path, existingFiles, true);
         } else {
             registerOne(path);
+            metrics.directoriesRegistered(registry.size());
+            if (overflowRecovery) {
+                snapshots.put(path, DirectorySnapshot.scan(path));
+            }
         }
     }
 
     private void registerOne(final Path path) throws IOException {
-        path.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        WatchKey key = hub.register(path, handler);
+        registry.put(path, key);
+        if (overflowRecovery) {
+            snapshots.putIfAbsent(path, new DirectorySnapshot());
+            snapshotChanged();
+        }
         if (log.isTraceEnabled()) {
             log.trace("Registered: {}", path);
         }
@@ -162,32 +610,200 @@ class DirectoryWatcherImpl implements DirectoryWatcher {
 
     // Implementation inspired by https://docs.oracle.com/javase/tutorial/essential/io/examples/WatchDir.java, from https://docs.oracle.com/javase/tutorial/essential/io/notification.html
 
-    private void registerAll(final Path basePath, @Nullable FileFilter fileFilter) throws IOException {
+    // existingFiles (if any) is told about all files found while walking, to not have to walk again to find them;
+    // initial is false for directories created later, whose registration is not reported as registrationProgress
+    private void registerAll(final Path basePath, @Nullable Consumer<Path> existingFiles, boolean initial)
+            throws IOException {
         // register basePath directory and sub-directories
+        long startNanos = System.nanoTime();
+        int registeredBefore = registry.size();
         Files.walkFileTree(basePath, new SimpleFileVisitor<>() {
             @Override
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                if (fileFilter == null || !fileFilter.accept(dir.toFile())) {
-                    registerOne(dir);
-                }
+                return visitDirectory(dir, attrs, initial) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                snapshot(file, attrs);
+                existingFile(file, attrs, existingFiles);
                 return FileVisitResult.CONTINUE;
             }
         });
+        walked(registeredBefore, startNanos, initial);
+    }
+
+    private void walked(int registeredBefore, long startNanos, boolean initial) {
+        int registered = registry.size();
+        metrics.registrationWalked(registered - registeredBefore, System.nanoTime() - startNanos);
+        metrics.directoriesRegistered(registered);
+        if (initial) {
+            reportProgress(registered);
+        }
+    }
+
+    private void reportProgress(int registered) {
+        if (registrationProgress != null) {
+            try {
+                registrationProgress.accept(registered);
+            } catch (RuntimeException e) {
+                exceptionHandler.onException(e);
+            }
+        }
+    }
+
+    // Returns whether to walk the sub-directories of this directory
+    private boolean visitDirectory(Path dir, BasicFileAttributes attrs, boolean initial) throws IOException {
+        // A directory which is still registered already had its sub-directories registered when it was
+        // itself registered, and anything created in it since then results in an ENTRY_CREATE event.
+        if (registry.isRegistered(dir)) {
+            return false;
+        }
+        // Don't watch, and not even walk, excluded directories (like node_modules/ or .git/)
+        if (!dir.equals(watchBasePath) && isExcludedDirectory(dir)) {
+            return false;
+        }
+        snapshot(dir, attrs);
+        if (fileFilter == null || !fileFilter.accept(dir.toFile())) {
+            registerOne(dir);
+            int registered = registry.size();
+            if (initial && registered % PROGRESS_INTERVAL == 0) {
+                reportProgress(registered);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Walk and register the directory tree on a ForkJoinPool, where idle threads steal the sub-directories of busy ones.
+     * This helps most where listing directories and reading attributes is slow (like on NFS), because the WatchService
+     * itself typically registers directories one at a time anyway. Events of directories which are already registered
+     * are processed (by the WatcherHub's thread) while the walk is still going on.
+     */
+    private CompletableFuture<Void> registerAllInParallel(Path basePath, int parallelism,
+            @Nullable Consumer<Path> existingFiles) {
+        long startNanos = System.nanoTime();
+        int registeredBefore = registry.size();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        return CompletableFuture.runAsync(() -> {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(basePath, BasicFileAttributes.class);
+                new RegisterTask(basePath, attrs, existingFiles).invoke();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pool).whenComplete((result, throwable) -> {
+            pool.shutdown();
+            walked(registeredBefore, startNanos, true);
+            if (closed) {
+                // close() was called while still registering, so release what was registered after it
+                releaseAll();
+            }
+        });
+    }
+
+    private final class RegisterTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // transient, because RecursiveAction is Serializable, but this task never is serialized
+        private final transient Path directory;
+        private final transient BasicFileAttributes attrs;
+        private final transient @Nullable Consumer<Path> existingFiles;
+
+        RegisterTask(Path directory, BasicFileAttributes attrs, @Nullable Consumer<Path> existingFiles) {
+            this.directory = directory;
+            this.attrs = attrs;
+            this.existingFiles = existingFiles;
+        }
+
+        @Override
+        protected void compute() {
+            List<RegisterTask> subTasks = new ArrayList<>();
+            try {
+                if (closed || !visitDirectory(directory, attrs, true)) {
+                    return;
+                }
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                    for (Path entry : stream) {
+                        BasicFileAttributes entryAttrs;
+                        try {
+                            entryAttrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        } catch (NoSuchFileException e) {
+                            continue;
+                        }
+                        if (entryAttrs.isDirectory()) {
+                            subTasks.add(new RegisterTask(entry, entryAttrs, existingFiles));
+                        } else {
+                            snapshot(entry, entryAttrs);
+                            existingFile(entry, entryAttrs, existingFiles);
+                        }
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // Deleted while we were walking, which its parent's WatchKey reports
+                return;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(subTasks);
+        }
+    }
+
+    // Uses the attributes the walk already read, and only follows symbolic links (like Files.isRegularFile() does)
+    private void existingFile(Path file, BasicFileAttributes attrs, @Nullable Consumer<Path> existingFiles) {
+        if (existingFiles == null) {
+            return;
+        }
+        if (!attrs.isRegularFile() && !(attrs.isSymbolicLink() && Files.isRegularFile(file))) {
+            return;
+        }
+        if (pathFilter == null || pathFilter.accepts(watchBasePath.relativize(file))) {
+            existingFiles.accept(file);
+        }
+    }
+
+    private boolean isExcludedDirectory(Path directory) {
+        return pathFilter != null && pathFilter.isExcludedDirectory(watchBasePath.relativize(directory));
+    }
+
+    // Record (already available) attributes found while walking, if overflowRecovery is enabled
+    private void snapshot(Path path, BasicFileAttributes attrs) {
+        Path parent = path.getParent();
+        Path fileName = path.getFileName();
+        if (parent != null && fileName != null) {
+            DirectorySnapshot snapshot = snapshots.get(parent);
+            if (snapshot != null) {
+                snapshot.put(fileName, attrs);
+                snapshotChanged();
+            }
+        }
     }
 
     @Override
     public void close() {
-        // The order here is important - first we stop the Thread, then close the Watcher.
-        thread.interrupt();
-        try {
-            watcher.close();
-        } catch (IOException e) {
-            log.error("WatchService close() failed", e);
+        // Store the snapshots one last time (unless the registration was not complete, as then they are not)
+        if (persistentSnapshot != null && persistentSnapshot.stop()) {
+            storeSnapshot();
+        }
+        closed = true;
+        releaseAll();
+    }
+
+    private void releaseAll() {
+        if (ownHub) {
+            hub.close();
+        } else {
+            for (WatchKey key : registry.keys()) {
+                hub.release(key, handler);
+            }
         }
+        registry.clear();
+        snapshots.clear();
+        metrics.directoriesRegistered(0);
     }
 
     @Override
     public String toString() {
-        return thread.getName();
+        return DirectoryWatcherImpl.class.getSimpleName() + ": " + watchBasePath;
     }
 }
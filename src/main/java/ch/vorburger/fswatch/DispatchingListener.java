@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.DirectoryWatcher.ExceptionHandler;
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
+/**
+ * Listener which notifies another wrapped Listener on an Executor, instead of on the calling Thread.
+ *
+ * <p>Changes of the same path are passed on in the order they occurred (one after the other), while
+ * changes of different paths may be handled in parallel, if the Executor has more than one Thread.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class DispatchingListener implements Listener {
+
+    protected final Listener delegate;
+    private final SerialExecutor executor;
+    private final ExceptionHandler exceptionHandler;
+
+    /**
+     * Constructor.
+     * @param executor the executor to notify the wrapped listener on
+     * @param listenerToWrap the listener to wrap
+     * @param exceptionHandler the exception handler
+     */
+    public DispatchingListener(Executor executor, Listener listenerToWrap, ExceptionHandler exceptionHandler) {
+        this.executor = new SerialExecutor(executor);
+        this.delegate = listenerToWrap;
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    @Override
+    public void onChange(Path path, ChangeKind changeKind) {
+        executor.execute(path, () -> {
+            try {
+                delegate.onChange(path, changeKind);
+            } catch (Throwable e) {
+                exceptionHandler.onException(e);
+            }
+        });
+    }
+
+    @Override
+    public void onMove(Path source, Path target) {
+        // In order with other changes of its new path (it has no more changes at its old one)
+        executor.execute(target, () -> {
+            try {
+                delegate.onMove(source, target);
+            } catch (Throwable e) {
+                exceptionHandler.onException(e);
+            }
+        });
+    }
+
+    @Override
+    public void onEvent(ChangeEvent event) {
+        // Keyed like onChange() and onMove(), i.e. by the (new) path
+        executor.execute(event.path(), () -> {
+            try {
+                delegate.onEvent(event);
+            } catch (Throwable e) {
+                exceptionHandler.onException(e);
+            }
+        });
+    }
+}
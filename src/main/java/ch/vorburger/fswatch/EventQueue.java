@@ -0,0 +1,292 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.DirectoryWatcher.ExceptionHandler;
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue (ring buffer) of changes between the watching and the listener.
+ *
+ * <p>The watching Thread only adds changes to this queue, and a task on the dispatch executor
+ * (or the scheduler) takes them off it again, in order, and notifies the listener.
+ * What happens when the queue is full is determined by its {@link OverflowPolicy}.
+ *
+ * <p>Use with {@link DirectoryWatcherBuilder#eventQueue(EventQueue)}; an EventQueue can only be used by one watcher.
+ * Keep a reference to it to observe its {@link #depth()}, and how many changes were {@link #dropped()} or {@link #coalesced()}.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class EventQueue {
+
+    /**
+     * What to do with a change when the queue is full.
+     */
+    public enum OverflowPolicy {
+
+        /** Make the watching Thread wait until there is space (which, on a shared hub, holds up all of its watchers). */
+        BLOCK,
+
+        /** Drop the oldest queued change, to make space for the new one. */
+        DROP_OLDEST,
+
+        /** Merge changes of a path which is already queued into that queued change (always, not only when full), and BLOCK if that's not enough. */
+        COALESCE_BY_PATH,
+
+        /** Drop the new change, and signal this as an IllegalStateException to the ExceptionHandler. */
+        FAIL
+    }
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+
+    // All guarded by lock; slots of changes which cancelled each other out (COALESCE_BY_PATH) are null, until taken
+    private final @Nullable Path[] paths;
+    private final @Nullable ChangeKind[] changeKinds;
+    private final Map<Path, Integer> slotsByPath = new HashMap<>();
+    private int head;
+    private int count;
+    private int depth;
+    private long dropped;
+    private long coalesced;
+    private boolean draining;
+
+    private @Nullable Listener listener;
+    private @Nullable Executor executor;
+    private @Nullable ExceptionHandler exceptionHandler;
+
+    /**
+     * Constructor.
+     * @param capacity how many changes the queue can hold
+     * @param policy what to do when the queue is full
+     */
+    public EventQueue(int capacity, OverflowPolicy policy) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        this.capacity = capacity;
+        this.policy = policy;
+        this.paths = new Path[capacity];
+        this.changeKinds = new ChangeKind[capacity];
+    }
+
+    /**
+     * Wrap a Listener, so that it's notified through this queue.
+     * This is done by {@link DirectoryWatcherBuilder#eventQueue(EventQueue)}, and can only be done once.
+     * @param listenerToWrap the listener to notify (in order) about the changes taken off the queue
+     * @param executorToDrainOn the executor on which the queue is drained
+     * @param exceptionHandlerToUse the exception handler
+     * @return the listener which puts changes onto this queue
+     */
+    public Listener attach(Listener listenerToWrap, Executor executorToDrainOn, ExceptionHandler exceptionHandlerToUse) {
+        lock.lock();
+        try {
+            if (listener != null)
+                throw new IllegalStateException("EventQueue is already used by another watcher");
+            listener = listenerToWrap;
+            executor = executorToDrainOn;
+            exceptionHandler = exceptionHandlerToUse;
+        } finally {
+            lock.unlock();
+        }
+        return this::put;
+    }
+
+    private void put(Path path, ChangeKind changeKind) throws InterruptedException {
+        Executor executorToDrainOn;
+        lock.lock();
+        try {
+            if (policy == OverflowPolicy.COALESCE_BY_PATH && coalesce(path, changeKind)) {
+                return;
+            }
+            while (count == capacity) {
+                if (policy == OverflowPolicy.DROP_OLDEST) {
+                    if (paths[take()] != null) {
+                        dropped++;
+                    }
+                } else if (policy == OverflowPolicy.FAIL) {
+                    dropped++;
+                    throw new IllegalStateException("EventQueue full (capacity " + capacity + "), dropped " + changeKind + " " + path);
+                } else {
+                    notFull.await();
+                }
+            }
+            int slot = (head + count) % capacity;
+            paths[slot] = path;
+            changeKinds[slot] = changeKind;
+            if (policy == OverflowPolicy.COALESCE_BY_PATH) {
+                slotsByPath.put(path, slot);
+            }
+            count++;
+            depth++;
+            if (draining) {
+                return;
+            }
+            draining = true;
+            executorToDrainOn = executor;
+        } finally {
+            lock.unlock();
+        }
+        if (executorToDrainOn == null)
+            throw new IllegalStateException("EventQueue not attached");
+        try {
+            executorToDrainOn.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            lock.lock();
+            try {
+                draining = false;
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    // Must hold lock
+    private boolean coalesce(Path path, ChangeKind changeKind) {
+        Integer slot = slotsByPath.get(path);
+        if (slot == null) {
+            return false;
+        }
+        ChangeKind merged = ChangeKinds.merge(changeKinds[slot], changeKind);
+        changeKinds[slot] = merged;
+        if (merged == null) {
+            paths[slot] = null;
+            slotsByPath.remove(path);
+            depth--;
+        }
+        coalesced++;
+        return true;
+    }
+
+    // Must hold lock, and count must be > 0; returns the (possibly null) slot taken
+    private int take() {
+        int slot = head;
+        head = (head + 1) % capacity;
+        count--;
+        Path path = paths[slot];
+        if (path != null) {
+            depth--;
+            if (policy == OverflowPolicy.COALESCE_BY_PATH) {
+                slotsByPath.remove(path);
+            }
+        }
+        notFull.signal();
+        return slot;
+    }
+
+    private void drain() {
+        for (;;) {
+            Path path;
+            ChangeKind changeKind;
+            Listener listenerToNotify;
+            ExceptionHandler exceptionHandlerToUse;
+            lock.lock();
+            try {
+                if (count == 0) {
+                    draining = false;
+                    return;
+                }
+                int slot = take();
+                path = paths[slot];
+                changeKind = changeKinds[slot];
+                paths[slot] = null;
+                changeKinds[slot] = null;
+                listenerToNotify = listener;
+                exceptionHandlerToUse = exceptionHandler;
+            } finally {
+                lock.unlock();
+            }
+            if (path == null || changeKind == null || listenerToNotify == null || exceptionHandlerToUse == null) {
+                continue;
+            }
+            try {
+                listenerToNotify.onChange(path, changeKind);
+            } catch (Throwable e) {
+                exceptionHandlerToUse.onException(e);
+            }
+        }
+    }
+
+    /**
+     * How many changes the queue can hold.
+     * @return the capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * How many changes are currently queued.
+     * @return the current queue depth
+     */
+    public int depth() {
+        lock.lock();
+        try {
+            return depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * How many changes were dropped so far (by {@link OverflowPolicy#DROP_OLDEST} or {@link OverflowPolicy#FAIL}).
+     * @return number of dropped changes
+     */
+    public long dropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * How many changes were merged into an already queued change of the same path so far (by {@link OverflowPolicy#COALESCE_BY_PATH}).
+     * @return number of coalesced changes
+     */
+    public long coalesced() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EventQueue{policy=" + policy + ", capacity=" + capacity + ", depth=" + depth() + ", dropped=" + dropped()
+                + ", coalesced=" + coalesced() + "}";
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import ch.vorburger.fswatch.DirectoryWatcher.BatchListener;
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.DirectoryWatcher.ExceptionHandler;
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Notifies the listener about the existing files which the DirectoryWatcherImpl finds while it walks the tree to
+ * register it, in batches, instead of walking the tree a second time once it's registered.
+ *
+ * <p>Like before, the listener is first notified about the watched directory itself, and then about the files.
+ * The batches are notified one after another on an Executor, and not by the (possibly parallel) walking threads
+ * themselves, so that a slow listener doesn't hold up the registration.
+ *
+ * @author Michael Vorburger.ch
+ */
+// intentionally package local, for now
+class ExistingFilesNotifier {
+
+    static final int BATCH_SIZE = 1000;
+
+    private final Path directory;
+    private final @Nullable Listener listener;
+    private final @Nullable BatchListener batchListener;
+    private final boolean parallel;
+    private final ExceptionHandler exceptionHandler;
+    private final SerialExecutor executor;
+
+    // Guarded by this
+    private List<Path> batch = new ArrayList<>();
+
+    // Only used by the executor's tasks, which run one at a time
+    private boolean notifiedDirectory;
+
+    /**
+     * Constructor.
+     * @param directory the watched directory
+     * @param listener the listener to notify, unless there is a batchListener
+     * @param batchListener the batchListener to notify, one batch at a time
+     * @param parallel whether to notify the listener about the files of a batch in parallel
+     * @param exceptionHandler the exception handler
+     * @param executor the Executor to notify the listener on
+     */
+    ExistingFilesNotifier(Path directory, @Nullable Listener listener, @Nullable BatchListener batchListener,
+            boolean parallel, ExceptionHandler exceptionHandler, Executor executor) {
+        this.directory = directory;
+        this.listener = listener;
+        this.batchListener = batchListener;
+        this.parallel = parallel;
+        this.exceptionHandler = exceptionHandler;
+        this.executor = new SerialExecutor(executor);
+    }
+
+    void onFile(Path file) {
+        List<Path> files;
+        synchronized (this) {
+            batch.add(file);
+            if (batch.size() < BATCH_SIZE) {
+                return;
+            }
+            files = swap();
+        }
+        // Outside of the lock, so that the other walking threads can go on adding files meanwhile
+        executor.execute(this, () -> deliver(files));
+    }
+
+    /**
+     * Notify the rest, once the walk is done.
+     * @return a future which completes once the listener has been notified about all files, including the rest
+     */
+    CompletableFuture<Void> finish() {
+        List<Path> files;
+        synchronized (this) {
+            files = swap();
+        }
+        CompletableFuture<Void> notified = new CompletableFuture<>();
+        // The tasks run one after another, so once this last one ran, all batches have been delivered
+        executor.execute(this, () -> {
+            try {
+                deliver(files);
+            } finally {
+                notified.complete(null);
+            }
+        });
+        return notified;
+    }
+
+    private List<Path> swap() {
+        List<Path> files = batch;
+        batch = new ArrayList<>();
+        return files;
+    }
+
+    private void deliver(List<Path> files) {
+        try {
+            if (batchListener != null) {
+                Map<Path, ChangeKind> changes = new LinkedHashMap<>();
+                if (!notifiedDirectory) {
+                    changes.put(directory, ChangeKind.MODIFIED);
+                }
+                for (Path file : files) {
+                    changes.put(file, ChangeKind.MODIFIED);
+                }
+                if (!changes.isEmpty()) {
+                    batchListener.onChanges(Collections.unmodifiableMap(changes));
+                }
+            } else if (listener != null) {
+                if (!notifiedDirectory) {
+                    listener.onChange(directory, ChangeKind.MODIFIED);
+                }
+                Stream<Path> stream = parallel ? files.parallelStream() : files.stream();
+                stream.forEach(file -> {
+                    try {
+                        listener.onChange(file, ChangeKind.MODIFIED);
+                    } catch (Throwable e) {
+                        exceptionHandler.onException(e);
+                    }
+                });
+            }
+        } catch (Throwable e) {
+            exceptionHandler.onException(e);
+        }
+        notifiedDirectory = true;
+    }
+}
@@ -60,27 +60,29 @@ public class FileWatcherBuilder extends DirectoryWatcherBuilder {
             throw new IllegalStateException("path not set");
         if (!path.toFile().exists())
             throw new IllegalStateException("path does not exist: " + path.toString());
-        if (listener == null)
+        if (listener == null && batchListener == null)
             throw new IllegalStateException("listener not set");
         if (!path.toFile().isFile()) {
             throw new IllegalStateException(
                     "When using FileWatcherBuilder, set path() to a single file, not a directory (use DirectoryWatcherBuilder to watch a directory, and its subdirectories)");
         }
-        // NOTE We do want to wrap the FileWatcherListener inside the QuietPeriodListener, and not the other way around!
-        Listener fileWatcherListener = new FileWatcherListener(path, listener);
-        Listener wrap = getQuietListener(fileWatcherListener);
-        Path parent = path.getParent();
-        if (parent == null)
-            throw new IllegalArgumentException("path does not have a parent: " + path);
-        DirectoryWatcherImpl watcher = new DirectoryWatcherImpl(false, parent, wrap, fileFilter,
-                exceptionHandler, eventKinds);
+        if (pollingIntervalInMS > 0 || backend != null || persistentSnapshot != null)
+            throw new IllegalStateException(
+                    "polling(), backend() and persistentSnapshot() are not (yet) supported by FileWatcherBuilder, only DirectoryWatcherBuilder");
+        // The listener is only notified about changes of this one file, because the (shared) registration of the
+        // parent directory dispatches events to the FileWatcherImpl of each file by name, see ParentDirectoryWatch
+        newWatcherDispatchExecutor();
+        Listener wrap = getQueueingListener(getStableFileListener(getContentHashingListener(getQuietListener())));
+        DirectoryWatcher watcher = FileWatcherImpl.watch(path, wrap, eventKinds, exceptionHandler, overflowRecovery, hub);
         firstListenerNotification();
         return watcher;
     }
 
     /**
      * Protected inner {@link Listener} class.
+     * @deprecated no longer used by {@link #build()}, which now dispatches events to each watched file by its name
      */
+    @Deprecated
     protected static class FileWatcherListener implements Listener {
 
         private final Listener delegate;
@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DirectoryWatcher which watches one single file.
+ *
+ * <p>All watched files of the same directory (on the same {@link WatcherHub}) share one
+ * registration of that directory, see {@link ParentDirectoryWatch}.
+ *
+ * @author Michael Vorburger.ch
+ */
+// intentionally package local, for now
+class FileWatcherImpl implements DirectoryWatcher {
+    private final static Logger log = LoggerFactory.getLogger(FileWatcherImpl.class);
+
+    private final ParentDirectoryWatch parentDirectoryWatch;
+    private final @Nullable WatcherHub ownHub;
+    private final Path file;
+    private final Path fileName;
+    private final Listener listener;
+    private final Set<ChangeKind> changeKinds;
+    private final ExceptionHandler exceptionHandler;
+    private final boolean overflowRecovery;
+
+    FileWatcherImpl(ParentDirectoryWatch parentDirectoryWatch, @Nullable WatcherHub ownHub, Path file, Listener listener,
+            ChangeKind[] eventKinds, ExceptionHandler exceptionHandler, boolean overflowRecovery) {
+        this.parentDirectoryWatch = parentDirectoryWatch;
+        this.ownHub = ownHub;
+        this.file = file;
+        Path name = file.getFileName();
+        if (name == null)
+            throw new IllegalArgumentException("path does not have a file name: " + file);
+        this.fileName = name;
+        this.listener = listener;
+        this.changeKinds = eventKinds.length == 0 ? EnumSet.noneOf(ChangeKind.class) : EnumSet.copyOf(Arrays.asList(eventKinds));
+        this.exceptionHandler = exceptionHandler;
+        this.overflowRecovery = overflowRecovery;
+    }
+
+    // typical code should use the FileWatcherBuilder instead of this directly
+    static FileWatcherImpl watch(Path file, Listener listener, ChangeKind[] eventKinds, ExceptionHandler exceptionHandler,
+            boolean overflowRecovery, @Nullable WatcherHub sharedHub) throws IOException {
+        if (sharedHub != null) {
+            return sharedHub.watchFile(file, null, listener, eventKinds, exceptionHandler, overflowRecovery);
+        }
+        // Without a shared hub, every watcher has its own WatchService and Thread (like it always used to)
+        WatcherHub ownHub = new WatcherHub(FileWatcherImpl.class.getSimpleName() + ": " + file, exceptionHandler);
+        try {
+            return ownHub.watchFile(file, ownHub, listener, eventKinds, exceptionHandler, overflowRecovery);
+        } catch (IOException | RuntimeException e) {
+            ownHub.close();
+            throw e;
+        }
+    }
+
+    Path fileName() {
+        return fileName;
+    }
+
+    void notifyListener(ChangeKind changeKind) {
+        try {
+            if (changeKinds.contains(changeKind)) { // Only send the events that the client is interested in
+                listener.onChange(file, changeKind);
+            }
+        } catch (Throwable e) {
+            exceptionHandler.onException(e);
+        }
+    }
+
+    void onException(Throwable t) {
+        exceptionHandler.onException(t);
+    }
+
+    void onOverflow() {
+        if (overflowRecovery) {
+            // Checking just the one file we watch is cheap, so unlike DirectoryWatcherImpl we don't need any snapshot
+            notifyListener(Files.exists(file) ? ChangeKind.MODIFIED : ChangeKind.DELETED);
+        } else {
+            log.error("Received OVERFLOW for {}, so a change of {} may have been lost (use overflowRecovery to re-check)",
+                    parentDirectoryWatch, file);
+        }
+    }
+
+    @Override
+    public void close() {
+        parentDirectoryWatch.remove(this);
+        if (ownHub != null) {
+            ownHub.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return FileWatcherImpl.class.getSimpleName() + ": " + file;
+    }
+}
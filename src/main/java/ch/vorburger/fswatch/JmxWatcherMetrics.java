@@ -0,0 +1,254 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@link WatcherMetrics} which counts everything, and exposes it as a {@link WatcherMetricsMXBean}
+ * named <code>ch.vorburger.fswatch:type=WatcherMetrics,name=...</code> on the platform MBeanServer.
+ *
+ * <p>One instance can be shared by several watchers, in which case it shows their sum
+ * (and the last registration walk of any of them).
+ *
+ * @author Michael Vorburger.ch
+ */
+public final class JmxWatcherMetrics implements WatcherMetrics, WatcherMetricsMXBean, Closeable {
+
+    private static final long[] BUCKET_UPPER_BOUNDS_IN_NANOS = { 10_000L, 100_000L, 1_000_000L, 10_000_000L,
+            100_000_000L, 1_000_000_000L, Long.MAX_VALUE };
+    private static final String[] BUCKET_NAMES = { "10us", "100us", "1ms", "10ms", "100ms", "1s", "inf" };
+
+    private final ObjectName objectName;
+    private final MBeanServer mbeanServer;
+
+    private final AtomicInteger registeredDirectories = new AtomicInteger();
+    private final Map<ChangeKind, LongAdder> eventsReceived = new EnumMap<>(ChangeKind.class);
+    private final LongAdder eventsFiltered = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder listenerInvocations = new LongAdder();
+    private final LongAdder listenerTotalNanos = new LongAdder();
+    private final AtomicLong listenerMaxNanos = new AtomicLong();
+    private final AtomicLongArray listenerLatencyBuckets = new AtomicLongArray(BUCKET_UPPER_BOUNDS_IN_NANOS.length);
+    private final LongAdder eventsSuppressed = new LongAdder();
+    private final LongAdder registrationWalks = new LongAdder();
+    private volatile long lastRegistrationWalkNanos;
+
+    /**
+     * Constructor, which registers the MXBean.
+     * @param name the value of the name key of the ObjectName, e.g. what is being watched
+     * @throws IllegalArgumentException if the name is invalid, or already registered
+     */
+    public JmxWatcherMetrics(String name) {
+        for (ChangeKind changeKind : ChangeKind.values()) {
+            eventsReceived.put(changeKind, new LongAdder());
+        }
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            objectName = ObjectName.getInstance("ch.vorburger.fswatch:type=WatcherMetrics,name=" + ObjectName.quote(name));
+            mbeanServer.registerMBean(this, objectName);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Could not register MXBean for: " + name, e);
+        }
+    }
+
+    /**
+     * Unregisters the MXBean.
+     */
+    @Override
+    public void close() {
+        try {
+            mbeanServer.unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Already unregistered, which is fine
+        }
+    }
+
+    @Override
+    public WatcherMetrics forWatcher() {
+        // Each watcher reports how many directories it has registered, which are added up here
+        AtomicInteger watcherRegisteredDirectories = new AtomicInteger();
+        JmxWatcherMetrics shared = this;
+        return new WatcherMetrics() {
+            @Override
+            public void directoriesRegistered(int count) {
+                shared.registeredDirectories.addAndGet(count - watcherRegisteredDirectories.getAndSet(count));
+            }
+
+            @Override
+            public void eventReceived(ChangeKind changeKind) {
+                shared.eventReceived(changeKind);
+            }
+
+            @Override
+            public void eventFiltered(ChangeKind changeKind) {
+                shared.eventFiltered(changeKind);
+            }
+
+            @Override
+            public void overflow() {
+                shared.overflow();
+            }
+
+            @Override
+            public void listenerInvoked(long durationInNanos) {
+                shared.listenerInvoked(durationInNanos);
+            }
+
+            @Override
+            public void eventSuppressed() {
+                shared.eventSuppressed();
+            }
+
+            @Override
+            public void registrationWalked(int directories, long durationInNanos) {
+                shared.registrationWalked(directories, durationInNanos);
+            }
+        };
+    }
+
+    @Override
+    public void directoriesRegistered(int count) {
+        // Only if not used via forWatcher(), i.e. by only one watcher
+        registeredDirectories.set(count);
+    }
+
+    @Override
+    public void eventReceived(ChangeKind changeKind) {
+        LongAdder counter = eventsReceived.get(changeKind);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    @Override
+    public void eventFiltered(ChangeKind changeKind) {
+        eventsFiltered.increment();
+    }
+
+    @Override
+    public void overflow() {
+        overflows.increment();
+    }
+
+    @Override
+    public void listenerInvoked(long durationInNanos) {
+        listenerInvocations.increment();
+        listenerTotalNanos.add(durationInNanos);
+        listenerMaxNanos.accumulateAndGet(durationInNanos, Math::max);
+        int bucket = 0;
+        while (durationInNanos > BUCKET_UPPER_BOUNDS_IN_NANOS[bucket]) {
+            bucket++;
+        }
+        listenerLatencyBuckets.incrementAndGet(bucket);
+    }
+
+    @Override
+    public void eventSuppressed() {
+        eventsSuppressed.increment();
+    }
+
+    @Override
+    public void registrationWalked(int directories, long durationInNanos) {
+        registrationWalks.increment();
+        lastRegistrationWalkNanos = durationInNanos;
+    }
+
+    @Override
+    public int getRegisteredDirectories() {
+        return registeredDirectories.get();
+    }
+
+    @Override
+    public Map<String, Long> getEventsReceived() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        eventsReceived.forEach((changeKind, counter) -> map.put(changeKind.name(), counter.sum()));
+        return map;
+    }
+
+    @Override
+    public long getEventsFiltered() {
+        return eventsFiltered.sum();
+    }
+
+    @Override
+    public long getOverflows() {
+        return overflows.sum();
+    }
+
+    @Override
+    public long getListenerInvocations() {
+        return listenerInvocations.sum();
+    }
+
+    @Override
+    public double getListenerAverageMicros() {
+        long invocations = listenerInvocations.sum();
+        return invocations == 0 ? 0 : listenerTotalNanos.sum() / 1000.0 / invocations;
+    }
+
+    @Override
+    public long getListenerMaxMicros() {
+        return NANOSECONDS.toMicros(listenerMaxNanos.get());
+    }
+
+    @Override
+    public Map<String, Long> getListenerLatencyHistogram() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKET_NAMES.length; i++) {
+            map.put(BUCKET_NAMES[i], listenerLatencyBuckets.get(i));
+        }
+        return map;
+    }
+
+    @Override
+    public long getEventsSuppressed() {
+        return eventsSuppressed.sum();
+    }
+
+    @Override
+    public long getRegistrationWalks() {
+        return registrationWalks.sum();
+    }
+
+    @Override
+    public long getLastRegistrationWalkMillis() {
+        return NANOSECONDS.toMillis(lastRegistrationWalkNanos);
+    }
+
+    @Override
+    public String toString() {
+        return objectName.toString();
+    }
+}
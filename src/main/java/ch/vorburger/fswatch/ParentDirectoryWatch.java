@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The one registration of a directory which all {@link FileWatcherImpl}s
+ * watching a file in it share, on a {@link WatcherHub}.
+ *
+ * <p>Events are dispatched with one hash lookup of their file name, instead of offering every
+ * event of the directory to every watcher of a file in it, which would then have to compare paths.
+ *
+ * @author Michael Vorburger.ch
+ */
+// intentionally package local, for now
+class ParentDirectoryWatch implements WatcherHub.Handler {
+    private final static Logger log = LoggerFactory.getLogger(ParentDirectoryWatch.class);
+
+    private final WatcherHub hub;
+    private final Path directory;
+    private final WatchKey key;
+    private final Map<Path, List<FileWatcherImpl>> watchersByFileName = new ConcurrentHashMap<>();
+
+    ParentDirectoryWatch(WatcherHub hub, Path directory) throws IOException {
+        this.hub = hub;
+        this.directory = directory;
+        this.key = hub.register(directory, this);
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    boolean isValid() {
+        return key.isValid();
+    }
+
+    boolean isEmpty() {
+        return watchersByFileName.isEmpty();
+    }
+
+    void add(FileWatcherImpl watcher) {
+        watchersByFileName.computeIfAbsent(watcher.fileName(), fileName -> new CopyOnWriteArrayList<>()).add(watcher);
+    }
+
+    void remove(FileWatcherImpl watcher) {
+        watchersByFileName.computeIfPresent(watcher.fileName(), (fileName, watchers) -> {
+            watchers.remove(watcher);
+            return watchers.isEmpty() ? null : watchers;
+        });
+        hub.releaseIfUnused(this);
+    }
+
+    void release() {
+        hub.release(key, this);
+    }
+
+    @Override
+    public void onEvents(WatchKey key, List<WatchEvent<?>> events) {
+        boolean overflowed = false;
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                if (!overflowed) {
+                    overflowed = true;
+                    for (List<FileWatcherImpl> watchers : watchersByFileName.values()) {
+                        for (FileWatcherImpl watcher : watchers) {
+                            try {
+                                watcher.onOverflow();
+                            } catch (RuntimeException e) {
+                                watcher.onException(e);
+                            }
+                        }
+                    }
+                }
+                continue;
+            }
+            Path fileName = (Path) event.context();
+            if (fileName == null) {
+                log.error("Received {} but event.context() == null: {}", event.kind().name(), event);
+                continue;
+            }
+            List<FileWatcherImpl> watchers = watchersByFileName.get(fileName);
+            if (watchers == null) {
+                // An event for a file in the same directory which nobody is watching
+                continue;
+            }
+            log.trace("Received {} for: {}", event.kind().name(), fileName);
+            ChangeKind changeKind = ChangeKinds.of(event.kind());
+            for (FileWatcherImpl watcher : watchers) {
+                try {
+                    watcher.notifyListener(changeKind);
+                } catch (RuntimeException e) {
+                    // Only affects this one watcher, not the others watching a file in the same directory
+                    watcher.onException(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onInvalid(WatchKey key) {
+        log.trace("WatchKey no longer valid, dropped: {}", directory);
+        hub.forget(this);
+    }
+
+    @Override
+    public void onException(Throwable t) {
+        // Failures of one FileWatcherImpl already went to its own ExceptionHandler, so this is about all of them
+        for (List<FileWatcherImpl> watchers : watchersByFileName.values()) {
+            for (FileWatcherImpl watcher : watchers) {
+                watcher.onException(t);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return directory.toString();
+    }
+}
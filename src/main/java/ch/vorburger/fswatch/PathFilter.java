@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Include and exclude globs, compiled once, and matched against paths relative to the watched directory.
+ *
+ * <p>Globs have the syntax of {@link FileSystem#getPathMatcher(String)}. As a convenience, a glob
+ * starting with <code>**&#47;</code> also matches at the top level (so <code>**&#47;*.class</code> matches <code>A.class</code>),
+ * and a directory matching an exclude glob ending with <code>&#47;**</code> (like <code>**&#47;node_modules&#47;**</code>)
+ * is excluded together with everything in it, so it's not even walked.
+ *
+ * @author Michael Vorburger.ch
+ */
+// intentionally package local, for now
+class PathFilter {
+
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final List<PathMatcher> excludedDirectories;
+
+    private PathFilter(List<PathMatcher> includes, List<PathMatcher> excludes, List<PathMatcher> excludedDirectories) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.excludedDirectories = excludedDirectories;
+    }
+
+    static PathFilter compile(FileSystem fileSystem, List<String> includeGlobs, List<String> excludeGlobs) {
+        List<PathMatcher> includes = new ArrayList<>();
+        for (String glob : includeGlobs) {
+            compile(fileSystem, glob, includes);
+        }
+        List<PathMatcher> excludes = new ArrayList<>();
+        List<PathMatcher> excludedDirectories = new ArrayList<>();
+        for (String glob : excludeGlobs) {
+            compile(fileSystem, glob, excludes);
+            if (glob.endsWith("/**")) {
+                compile(fileSystem, glob.substring(0, glob.length() - "/**".length()), excludedDirectories);
+            }
+        }
+        return new PathFilter(includes, excludes, excludedDirectories);
+    }
+
+    private static void compile(FileSystem fileSystem, String glob, List<PathMatcher> matchers) {
+        matchers.add(fileSystem.getPathMatcher("glob:" + glob));
+        if (glob.startsWith("**/")) {
+            matchers.add(fileSystem.getPathMatcher("glob:" + glob.substring("**/".length())));
+        }
+    }
+
+    /**
+     * Whether a directory should not be watched, and not even walked.
+     * @param relativeDirectory directory, relative to the watched directory
+     */
+    boolean isExcludedDirectory(Path relativeDirectory) {
+        return matchesAny(excludedDirectories, relativeDirectory) || matchesAny(excludes, relativeDirectory);
+    }
+
+    /**
+     * Whether the listener should be notified about a change of this path.
+     * @param relativePath path, relative to the watched directory
+     */
+    boolean accepts(Path relativePath) {
+        if (!includes.isEmpty() && !matchesAny(includes, relativePath)) {
+            return false;
+        }
+        return !isExcludedDirectory(relativePath);
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
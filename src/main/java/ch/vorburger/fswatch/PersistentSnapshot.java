@@ -0,0 +1,238 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import ch.vorburger.fswatch.DirectorySnapshot.FileState;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link DirectorySnapshot}s of all directories of a watched tree, persisted to a file, so that
+ * what changed while nobody was watching can be found when watching the same tree again, e.g. after a restart.
+ *
+ * <p>The file is a compact binary format: for each directory its path (relative to the watched directory), and
+ * for each of its entries the name, size, last modified time, file key hash and whether it's a directory.
+ * It is rewritten as a whole (to a temporary file, which then atomically replaces it), not updated in place.
+ * It is read and written with (buffered) streams, and intentionally not memory-mapped, because a mapping stays open
+ * until it is garbage collected, and on Windows a file which is still mapped cannot be replaced.
+ * Names which are longer than 65535 bytes (in UTF-8) are not stored; such a path is then simply seen as new next time.
+ *
+ * @author Michael Vorburger.ch
+ */
+// intentionally package local, for now
+final class PersistentSnapshot {
+    private final static Logger log = LoggerFactory.getLogger(PersistentSnapshot.class);
+
+    // "FSW" and the version of the format
+    private static final int MAGIC = 0x46535701;
+    private static final int MAX_NAME_LENGTH = 0xFFFF;
+    private static final long STORE_INTERVAL_IN_MS = 10_000;
+
+    private final Path file;
+    private final Path watchBasePath;
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean changed;
+    private @Nullable ScheduledFuture<?> storing; // guarded by this
+
+    PersistentSnapshot(Path file, Path watchBasePath, ScheduledExecutorService scheduler) {
+        this.file = file;
+        this.watchBasePath = watchBasePath;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns the snapshots of all directories stored by a previous run, keyed by absolute directory path;
+     * or null if there are none (or they cannot be read, e.g. because the file is corrupt).
+     */
+    @Nullable Map<Path, DirectorySnapshot> load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                log.warn("Ignoring snapshot {}, because it is not in the expected format", file);
+                return null;
+            }
+            int directories = in.readInt();
+            if (directories < 0) {
+                throw new IOException("Invalid number of directories: " + directories);
+            }
+            Map<Path, DirectorySnapshot> snapshots = new HashMap<>();
+            for (int i = 0; i < directories; i++) {
+                Path directory = watchBasePath.resolve(readString(in));
+                DirectorySnapshot snapshot = new DirectorySnapshot();
+                int entries = in.readInt();
+                for (int j = 0; j < entries; j++) {
+                    Path fileName = watchBasePath.getFileSystem().getPath(readString(in));
+                    snapshot.put(fileName, new FileState(in.readLong(), in.readLong(), in.readInt(), in.readByte() != 0));
+                }
+                snapshots.put(directory, snapshot);
+            }
+            return snapshots;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Ignoring snapshot {}, because it cannot be read", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Remember that the snapshots changed since they were last stored.
+     */
+    void changed() {
+        if (!changed) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Start to regularly run store (which is expected to call {@link #store(Map)}), to keep the file up to date.
+     */
+    synchronized void storePeriodically(Runnable store) {
+        storing = scheduler.scheduleWithFixedDelay(store, STORE_INTERVAL_IN_MS, STORE_INTERVAL_IN_MS, MILLISECONDS);
+    }
+
+    /**
+     * Stop regularly storing. Returns whether it was, i.e. whether {@link #storePeriodically(Runnable)} was called.
+     */
+    synchronized boolean stop() {
+        ScheduledFuture<?> wasStoring = storing;
+        if (wasStoring == null) {
+            return false;
+        }
+        wasStoring.cancel(false);
+        storing = null;
+        return true;
+    }
+
+    /**
+     * Store the snapshots, unless they did not change since they were last stored.
+     */
+    synchronized void store(Map<Path, DirectorySnapshot> snapshots) throws IOException {
+        if (!changed) {
+            return;
+        }
+        changed = false;
+
+        // Copy (and encode) everything first, to know how many entries each directory has; the snapshots may change meanwhile
+        List<byte[]> names = new ArrayList<>();
+        List<FileState> states = new ArrayList<>();
+        List<Integer> entriesPerDirectory = new ArrayList<>();
+        for (Map.Entry<Path, DirectorySnapshot> directory : snapshots.entrySet()) {
+            byte[] name = watchBasePath.relativize(directory.getKey()).toString().getBytes(UTF_8);
+            if (name.length > MAX_NAME_LENGTH) {
+                log.warn("Not storing snapshot of {}, because its path is too long", directory.getKey());
+                continue;
+            }
+            names.add(name);
+            int entries = 0;
+            for (Map.Entry<Path, FileState> entry : directory.getValue().entries().entrySet()) {
+                name = entry.getKey().toString().getBytes(UTF_8);
+                if (name.length > MAX_NAME_LENGTH) {
+                    log.warn("Not storing snapshot of {}, because its name is too long", directory.getKey().resolve(entry.getKey()));
+                    continue;
+                }
+                names.add(name);
+                states.add(entry.getValue());
+                entries++;
+            }
+            entriesPerDirectory.add(entries);
+        }
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            write(temporaryFile, names, states, entriesPerDirectory);
+            Files.move(temporaryFile, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            changed = true;
+            throw e;
+        }
+        log.debug("Stored snapshot of {} directories to {}", entriesPerDirectory.size(), file);
+    }
+
+    private static void write(Path temporaryFile, List<byte[]> names, List<FileState> states,
+            List<Integer> entriesPerDirectory) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporaryFile, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            // Not closed itself, because that would close the channel before it's forced
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(MAGIC);
+            out.writeInt(entriesPerDirectory.size());
+            int nameIndex = 0;
+            int stateIndex = 0;
+            for (int entries : entriesPerDirectory) {
+                writeString(out, names.get(nameIndex++));
+                out.writeInt(entries);
+                for (int j = 0; j < entries; j++) {
+                    writeString(out, names.get(nameIndex++));
+                    FileState state = states.get(stateIndex++);
+                    out.writeLong(state.size());
+                    out.writeLong(state.lastModified());
+                    out.writeInt(state.fileKey());
+                    out.writeByte(state.isDirectory() ? 1 : 0);
+                }
+            }
+            out.flush();
+            channel.force(false);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, byte[] bytes) throws IOException {
+        // Longer names are skipped by store(), and would not be read back correctly
+        if (bytes.length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Name too long: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return PersistentSnapshot.class.getSimpleName() + ": " + file;
+    }
+}
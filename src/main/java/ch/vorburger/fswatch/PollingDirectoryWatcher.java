@@ -0,0 +1,276 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * DirectoryWatcher which polls, for file systems on which the java.nio.file.WatchService does not
+ * deliver events (like NFS, CIFS and some FUSE and overlay mounts).
+ *
+ * <p>It keeps a trie of the watched directories, each with a compact {@link DirectoryIndex} of its entries,
+ * and re-scans one directory at a time, comparing it to its previous index. Each directory has its own interval:
+ * a directory in which something changed is re-scanned again after the minimum interval, and the interval of one in
+ * which nothing changed doubles, up to the maximum interval. Each polling cycle only scans up to
+ * {@link #MAX_ENTRIES_PER_CYCLE} entries, so that even huge trees cost a bounded amount of CPU per cycle;
+ * directories which are due but beyond that wait for the next cycle.
+ *
+ * @author Michael Vorburger.ch
+ */
+// intentionally package local, for now
+class PollingDirectoryWatcher implements DirectoryWatcher {
+
+    static final int MAX_ENTRIES_PER_CYCLE = 50_000;
+
+    private final Path watchBasePath;
+    private final Listener listener;
+    private final @Nullable FileFilter fileFilter;
+    private final @Nullable PathFilter pathFilter;
+    private final ExceptionHandler exceptionHandler;
+    private final Set<ChangeKind> changeKinds;
+    private final WatcherMetrics metrics;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final ScheduledExecutorService poller;
+
+    // Only used by the poller thread (after the constructor)
+    private final Node root;
+    private final PriorityQueue<Node> due = new PriorityQueue<>(Comparator.comparingLong(node -> node.dueNanos));
+    private int directories;
+
+    private static final class Node {
+        final Path directory;
+        final boolean notify;
+        final Map<String, Node> children = new HashMap<>();
+        DirectoryIndex index = DirectoryIndex.EMPTY;
+        long intervalNanos;
+        long dueNanos;
+        boolean removed;
+
+        Node(Path directory, boolean notify, long intervalNanos) {
+            this.directory = directory;
+            this.notify = notify;
+            this.intervalNanos = intervalNanos;
+        }
+    }
+
+    // typical code should use the DirectoryWatcherBuilder instead of this directly
+    PollingDirectoryWatcher(Path watchBasePath, Listener listener, @Nullable FileFilter fileFilter,
+            ExceptionHandler exceptionHandler, ChangeKind[] eventKinds, @Nullable PathFilter pathFilter,
+            long minIntervalInMS, long maxIntervalInMS, WatcherMetrics metrics) throws IOException {
+        if (!watchBasePath.toFile().isDirectory()) {
+            throw new IllegalArgumentException("Not a directory: " + watchBasePath);
+        }
+        this.watchBasePath = watchBasePath;
+        this.listener = listener;
+        this.fileFilter = fileFilter;
+        this.pathFilter = pathFilter;
+        this.exceptionHandler = exceptionHandler;
+        this.changeKinds = eventKinds.length == 0 ? EnumSet.noneOf(ChangeKind.class) : EnumSet.copyOf(Arrays.asList(eventKinds));
+        this.metrics = metrics;
+        this.minIntervalNanos = MILLISECONDS.toNanos(minIntervalInMS);
+        this.maxIntervalNanos = MILLISECONDS.toNanos(maxIntervalInMS);
+
+        long startNanos = System.nanoTime();
+        root = newNode(watchBasePath);
+        addSubtree(root, false);
+        metrics.registrationWalked(directories, System.nanoTime() - startNanos);
+        metrics.directoriesRegistered(directories);
+
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, PollingDirectoryWatcher.class.getSimpleName() + ": " + watchBasePath);
+            thread.setDaemon(true);
+            return thread;
+        });
+        // poll() handles its own exceptions, so its Future is not needed (close() shuts down the poller)
+        var unused = poller.scheduleWithFixedDelay(this::poll, minIntervalNanos, minIntervalNanos, NANOSECONDS);
+    }
+
+    private Node newNode(Path directory) {
+        // Like DirectoryWatcherImpl, which doesn't register directories matched by the fileFilter (but their sub-directories)
+        boolean notify = fileFilter == null || !fileFilter.accept(directory.toFile());
+        return new Node(directory, notify, minIntervalNanos);
+    }
+
+    private void poll() {
+        try {
+            long now = System.nanoTime();
+            int budget = MAX_ENTRIES_PER_CYCLE;
+            Node node;
+            while (budget > 0 && (node = due.peek()) != null && node.dueNanos - now <= 0) {
+                due.remove();
+                if (!node.removed) {
+                    budget -= rescan(node);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Don't let scheduleWithFixedDelay() stop polling
+            exceptionHandler.onException(e);
+        }
+    }
+
+    private int rescan(Node node) {
+        DirectoryIndex current;
+        try {
+            current = DirectoryIndex.scan(node.directory);
+        } catch (NoSuchFileException e) {
+            // Deleted, so are all of its entries; its parent notices the directory itself
+            current = DirectoryIndex.EMPTY;
+        } catch (IOException e) {
+            exceptionHandler.onException(e);
+            schedule(node);
+            return 1;
+        }
+        DirectoryIndex previous = node.index;
+        node.index = current;
+        int directoriesBefore = directories;
+        boolean[] changed = { false };
+        previous.diff(current, (name, changeKind, isDirectory) -> {
+            changed[0] = true;
+            onChange(node, name, changeKind, isDirectory);
+        });
+        if (directories != directoriesBefore) {
+            metrics.directoriesRegistered(directories);
+        }
+        // Hot directories are re-scanned more often than directories in which nothing changes
+        node.intervalNanos = changed[0] ? minIntervalNanos : Math.min(node.intervalNanos * 2, maxIntervalNanos);
+        schedule(node);
+        return Math.max(1, current.size());
+    }
+
+    private void onChange(Node parent, String name, ChangeKind changeKind, boolean isDirectory) {
+        Path path = parent.directory.resolve(name);
+        if (isDirectory && changeKind == ChangeKind.DELETED) {
+            Node child = parent.children.remove(name);
+            if (child != null) {
+                removeSubtree(child);
+            }
+        }
+        notifyListener(parent, path, changeKind);
+        if (isDirectory && changeKind == ChangeKind.CREATED && !isExcludedDirectory(path)) {
+            Node child = newNode(path);
+            parent.children.put(name, child);
+            try {
+                // Unlike from a WatchService, there is no event for what is already in it, so report that as CREATED
+                addSubtree(child, true);
+            } catch (IOException e) {
+                exceptionHandler.onException(e);
+            }
+        }
+    }
+
+    private void addSubtree(Node top, boolean notify) throws IOException {
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(top);
+        Node node;
+        while ((node = pending.poll()) != null) {
+            try {
+                node.index = DirectoryIndex.scan(node.directory);
+            } catch (NoSuchFileException e) {
+                // Already deleted again, which its parent will notice
+            }
+            directories++;
+            schedule(node);
+            for (int i = 0; i < node.index.size(); i++) {
+                String name = node.index.name(i);
+                Path path = node.directory.resolve(name);
+                if (notify) {
+                    notifyListener(node, path, ChangeKind.CREATED);
+                }
+                if (node.index.isDirectory(i) && !isExcludedDirectory(path)) {
+                    Node child = newNode(path);
+                    node.children.put(name, child);
+                    pending.push(child);
+                }
+            }
+        }
+    }
+
+    private void removeSubtree(Node top) {
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(top);
+        Node node;
+        while ((node = pending.poll()) != null) {
+            // Lazily dropped from the due queue by poll()
+            node.removed = true;
+            directories--;
+            pending.addAll(node.children.values());
+            node.children.clear();
+        }
+    }
+
+    private void schedule(Node node) {
+        node.dueNanos = System.nanoTime() + node.intervalNanos;
+        due.add(node);
+    }
+
+    private boolean isExcludedDirectory(Path directory) {
+        return pathFilter != null && pathFilter.isExcludedDirectory(watchBasePath.relativize(directory));
+    }
+
+    private void notifyListener(Node node, Path path, ChangeKind changeKind) {
+        if (!node.notify) {
+            return;
+        }
+        metrics.eventReceived(changeKind);
+        if (pathFilter != null && !pathFilter.accepts(watchBasePath.relativize(path))) {
+            return;
+        }
+        try {
+            if (changeKinds.contains(changeKind)) { // Only send the events that the client is interested in
+                listener.onChange(path, changeKind);
+            } else {
+                metrics.eventFiltered(changeKind);
+            }
+        } catch (Throwable e) {
+            exceptionHandler.onException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+        metrics.directoriesRegistered(0);
+    }
+
+    @Override
+    public String toString() {
+        return PollingDirectoryWatcher.class.getSimpleName() + ": " + watchBasePath;
+    }
+}
@@ -19,16 +19,24 @@
  */
 package ch.vorburger.fswatch;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
 import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
 import ch.vorburger.fswatch.DirectoryWatcher.ExceptionHandler;
 import ch.vorburger.fswatch.DirectoryWatcher.Listener;
 import org.jspecify.annotations.Nullable;
 
 import java.nio.file.Path;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Listener which only notifies by delegating to another wrapped Listener after a certain quiet period.
  *
+ * <p>The quiet period is timed on a (shared) ScheduledExecutorService, instead of a new Thread per burst of changes;
+ * each change only moves the deadline, and the one scheduled task re-schedules itself until that deadline is reached.
+ *
  * @author Michael Vorburger.ch
  */
 public class QuietPeriodListener implements Listener {
@@ -36,8 +44,31 @@ public class QuietPeriodListener implements Listener {
     protected final Listener delegate;
     protected final long quietPeriodInMS;
     private final ExceptionHandler exceptionHandler;
+    private final ScheduledExecutorService scheduler;
+    private final WatcherMetrics metrics;
+    // Allocated once, not on every schedule()
+    private final Runnable onQuietPeriodElapsed = this::onQuietPeriodElapsed;
+
+    // All guarded by this
+    protected boolean scheduled;
+    protected long deadlineNanos;
+    private @Nullable Path path;
+    private @Nullable ChangeKind changeKind;
+    private @Nullable Path source; // only if MOVED
+    private @Nullable ChangeEvent event; // only if notified with one
 
+    /**
+     * The thread which used to wait for the quiet period.
+     * @deprecated no longer used, the quiet period is now scheduled on a shared scheduler; will be removed
+     */
+    @Deprecated
     protected @Nullable Thread thread;
+
+    /**
+     * Whether the thread had to wait for another quiet period.
+     * @deprecated no longer used, see {@link #deadlineNanos}; will be removed
+     */
+    @Deprecated
     protected volatile boolean sleepAgain;
 
     /**
@@ -47,32 +78,121 @@ public class QuietPeriodListener implements Listener {
      * @param exceptionHandler the exception handler
      */
     public QuietPeriodListener(long quietPeriodInMS, Listener listenerToWrap, ExceptionHandler exceptionHandler) {
+        this(quietPeriodInMS, listenerToWrap, exceptionHandler, DefaultScheduler.instance());
+    }
+
+    /**
+     * Constructor.
+     * @param quietPeriodInMS the quiet period in milliseconds
+     * @param listenerToWrap the listener to wrap
+     * @param exceptionHandler the exception handler
+     * @param scheduler the scheduler to time the quiet period on, and to notify the wrapped listener from
+     */
+    public QuietPeriodListener(long quietPeriodInMS, Listener listenerToWrap, ExceptionHandler exceptionHandler,
+            ScheduledExecutorService scheduler) {
+        this(quietPeriodInMS, listenerToWrap, exceptionHandler, scheduler, WatcherMetrics.NONE);
+    }
+
+    /**
+     * Constructor.
+     * @param quietPeriodInMS the quiet period in milliseconds
+     * @param listenerToWrap the listener to wrap
+     * @param exceptionHandler the exception handler
+     * @param scheduler the scheduler to time the quiet period on, and to notify the wrapped listener from
+     * @param metrics notified about changes suppressed during the quiet period
+     */
+    public QuietPeriodListener(long quietPeriodInMS, Listener listenerToWrap, ExceptionHandler exceptionHandler,
+            ScheduledExecutorService scheduler, WatcherMetrics metrics) {
         this.quietPeriodInMS = quietPeriodInMS;
         this.delegate = listenerToWrap;
         this.exceptionHandler = exceptionHandler;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onChange(Path path, ChangeKind changeKind) {
+        var unused = onChange(null, path, changeKind);
     }
 
     @Override
-    public synchronized void onChange(Path path, ChangeKind changeKind) {
-        if (thread != null && thread.isAlive()) {
-            sleepAgain = true;
-            //System.out.println("sleepAgain = true");
+    public void onMove(Path source, Path target) {
+        var unused = onChange(source, target, ChangeKind.MOVED);
+    }
+
+    @Override
+    public synchronized void onEvent(ChangeEvent event) {
+        if (onChange(event.source(), event.path(), event.changeKind())) {
+            this.event = event;
+        }
+    }
+
+    // Returns whether this is the first change of a quiet period, which the wrapped listener is going to be notified about
+    private synchronized boolean onChange(@Nullable Path source, Path path, ChangeKind changeKind) {
+        deadlineNanos = System.nanoTime() + MILLISECONDS.toNanos(quietPeriodInMS);
+        if (!scheduled) {
+            // Like before, the wrapped listener is notified about the first change of a quiet period
+            this.path = path;
+            this.changeKind = changeKind;
+            this.source = source;
+            this.event = null;
+            schedule(MILLISECONDS.toNanos(quietPeriodInMS));
+            return true;
         } else {
-            Runnable r = () -> {
+            metrics.eventSuppressed();
+            return false;
+        }
+    }
+
+    @SuppressWarnings("FutureReturnValueIgnored") // onQuietPeriodElapsed() handles its own exceptions
+    private synchronized void schedule(long delayInNanos) {
+        try {
+            scheduler.schedule(onQuietPeriodElapsed, delayInNanos, NANOSECONDS);
+            scheduled = true;
+        } catch (RejectedExecutionException e) {
+            scheduled = false;
+            throw e;
+        }
+    }
+
+    private void onQuietPeriodElapsed() {
+        Path pathToNotify;
+        ChangeKind changeKindToNotify;
+        @Nullable Path sourceToNotify;
+        @Nullable ChangeEvent eventToNotify;
+        synchronized (this) {
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            if (remainingNanos > 0) {
                 try {
-                    do {
-                        sleepAgain = false;
-                        //System.out.println("sleepAgain = false");
-                        Thread.sleep(quietPeriodInMS);
-                    } while (sleepAgain);
-                    delegate.onChange(path, changeKind);
-                } catch (Throwable e) {
+                    schedule(remainingNanos);
+                } catch (RejectedExecutionException e) {
                     exceptionHandler.onException(e);
                 }
-            };
-            thread = new Thread(r, QuietPeriodListener.class.getName());
-            thread.setDaemon(true);
-            thread.start();
+                return;
+            }
+            scheduled = false;
+            pathToNotify = path;
+            changeKindToNotify = changeKind;
+            sourceToNotify = source;
+            eventToNotify = event;
+            path = null;
+            changeKind = null;
+            source = null;
+            event = null;
+        }
+        if (pathToNotify == null || changeKindToNotify == null) {
+            return;
+        }
+        try {
+            if (eventToNotify != null) {
+                delegate.onEvent(eventToNotify);
+            } else if (sourceToNotify != null) {
+                delegate.onMove(sourceToNotify, pathToNotify);
+            } else {
+                delegate.onChange(pathToNotify, changeKindToNotify);
+            }
+        } catch (Throwable e) {
+            exceptionHandler.onException(e);
         }
     }
 }
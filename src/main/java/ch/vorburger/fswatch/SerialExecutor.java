@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks on an Executor, serially (in order) for the same key, but in parallel for different keys.
+ *
+ * @author Michael Vorburger.ch
+ */
+// intentionally package local, for now
+class SerialExecutor {
+
+    private final Executor executor;
+
+    // All guarded by this; a key is only in here while it has tasks queued or running
+    private final Map<Object, Queue<Runnable>> queues = new HashMap<>();
+
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    void execute(Object key, Runnable task) {
+        Queue<Runnable> queue;
+        synchronized (this) {
+            queue = queues.get(key);
+            if (queue != null) {
+                // Already running (or about to) for this key, so it will pick this up once it's done with the previous ones
+                queue.add(task);
+                return;
+            }
+            queue = new ArrayDeque<>();
+            queue.add(task);
+            queues.put(key, queue);
+        }
+        Queue<Runnable> queueToDrain = queue;
+        try {
+            executor.execute(() -> drain(key, queueToDrain));
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                queues.remove(key);
+            }
+            throw e;
+        }
+    }
+
+    private void drain(Object key, Queue<Runnable> queue) {
+        for (;;) {
+            Runnable task;
+            synchronized (this) {
+                task = queue.peek();
+                if (task == null) {
+                    queues.remove(key);
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    queue.remove();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.DirectoryWatcher.ExceptionHandler;
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Listener which only notifies about CREATED and MODIFIED files once they are completely written,
+ * i.e. when their size and last modified time stopped changing, and no more changes of them were notified.
+ *
+ * <p>Each such file is checked after the interval, and then, while it is still being written, less and less often,
+ * up to the max interval; so that many (large) files which are written slowly for a long time are not checked all the time.
+ * Directories, DELETED and MOVED are passed on immediately (but a file which is moved while it is still being written
+ * is passed on once it is completely written, at its new path). A file which is CREATED and DELETED again before
+ * it was completely written is not passed on at all.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class StableFileListener implements Listener {
+
+    private final class PendingFile implements Runnable {
+        private final Path path;
+        private final @Nullable Path root; // only if notified with a ChangeEvent
+        private ChangeKind changeKind;
+        private long size;
+        private FileTime lastModified;
+        private boolean changed; // since the last check
+        private long intervalInMS;
+
+        PendingFile(@Nullable Path root, Path path, ChangeKind changeKind, long size, FileTime lastModified) {
+            this.root = root;
+            this.path = path;
+            this.changeKind = changeKind;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.intervalInMS = StableFileListener.this.intervalInMS;
+        }
+
+        @Override
+        public void run() {
+            check(this);
+        }
+
+        // On the scheduler, which only times the check, but does not run it, because that reads the file's attributes
+        void submit() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                synchronized (StableFileListener.this) {
+                    pendingFiles.remove(path);
+                }
+                exceptionHandler.onException(e);
+            }
+        }
+    }
+
+    protected final Listener delegate;
+    protected final long intervalInMS;
+    protected final long maxIntervalInMS;
+    private final ExceptionHandler exceptionHandler;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final WatcherMetrics metrics;
+    private final Map<Path, PendingFile> pendingFiles = new HashMap<>(); // guarded by this
+
+    /**
+     * Constructor.
+     * @param intervalInMS how long the size and last modified time of a file must not change, in milliseconds
+     * @param maxIntervalInMS the maximum interval at which files which are still being written are checked, in milliseconds
+     * @param listenerToWrap the listener to wrap
+     * @param exceptionHandler the exception handler
+     */
+    public StableFileListener(long intervalInMS, long maxIntervalInMS, Listener listenerToWrap,
+            ExceptionHandler exceptionHandler) {
+        this(intervalInMS, maxIntervalInMS, listenerToWrap, exceptionHandler, DefaultScheduler.instance(),
+                DefaultScheduler.newSerialExecutor(), WatcherMetrics.NONE);
+    }
+
+    /**
+     * Constructor.
+     * @param intervalInMS how long the size and last modified time of a file must not change, in milliseconds
+     * @param maxIntervalInMS the maximum interval at which files which are still being written are checked, in milliseconds
+     * @param listenerToWrap the listener to wrap
+     * @param exceptionHandler the exception handler
+     * @param scheduler the scheduler to time the checks of the files on
+     * @param executor the executor to check the files on, and to notify the wrapped listener from
+     * @param metrics notified about changes of files which are still being written
+     */
+    public StableFileListener(long intervalInMS, long maxIntervalInMS, Listener listenerToWrap,
+            ExceptionHandler exceptionHandler, ScheduledExecutorService scheduler, Executor executor, WatcherMetrics metrics) {
+        if (intervalInMS <= 0 || maxIntervalInMS < intervalInMS)
+            throw new IllegalArgumentException("intervalInMS must be > 0 and <= maxIntervalInMS");
+        this.intervalInMS = intervalInMS;
+        this.maxIntervalInMS = maxIntervalInMS;
+        this.delegate = listenerToWrap;
+        this.exceptionHandler = exceptionHandler;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onChange(Path path, ChangeKind changeKind) throws Throwable {
+        if (changeKind == ChangeKind.DELETED) {
+            if (!isDeletedBeforeWritten(path)) {
+                delegate.onChange(path, changeKind);
+            }
+        } else if (!isBeingWritten(null, path, changeKind, readAttributes(path))) {
+            delegate.onChange(path, changeKind);
+        }
+    }
+
+    @Override
+    public void onMove(Path source, Path target) throws Throwable {
+        if (!isMovedBeforeWritten(null, source, target)) {
+            delegate.onMove(source, target);
+        }
+    }
+
+    @Override
+    public void onEvent(ChangeEvent event) throws Throwable {
+        Path source = event.source();
+        if (source != null) {
+            if (!isMovedBeforeWritten(event.root(), source, event.path())) {
+                delegate.onEvent(event);
+            }
+        } else if (event.changeKind() == ChangeKind.DELETED) {
+            if (!isDeletedBeforeWritten(event.path())) {
+                delegate.onEvent(event);
+            }
+        } else if (!isBeingWritten(event.root(), event.path(), event.changeKind(), event.attributes())) {
+            delegate.onEvent(event);
+        }
+    }
+
+    // Returns whether the file is (still) being written, and thus only notified later
+    private synchronized boolean isBeingWritten(@Nullable Path root, Path path, ChangeKind changeKind,
+            @Nullable BasicFileAttributes attrs) {
+        @Nullable PendingFile pendingFile = pendingFiles.get(path);
+        if (pendingFile != null) {
+            // Not re-scheduled; the next check will see that it changed, and check again later
+            ChangeKind merged = ChangeKinds.merge(pendingFile.changeKind, changeKind);
+            pendingFile.changeKind = merged != null ? merged : changeKind;
+            pendingFile.changed = true;
+            metrics.eventSuppressed();
+            return true;
+        }
+        if (attrs == null || !attrs.isRegularFile()) {
+            // A directory (or already gone again, which a DELETED will follow)
+            return false;
+        }
+        pendingFile = new PendingFile(root, path, changeKind, attrs.size(), attrs.lastModifiedTime());
+        pendingFiles.put(path, pendingFile);
+        schedule(pendingFile);
+        return true;
+    }
+
+    // Returns whether the file was DELETED before it was completely written, and thus not notified at all
+    private synchronized boolean isDeletedBeforeWritten(Path path) {
+        @Nullable PendingFile pendingFile = pendingFiles.remove(path);
+        if (pendingFile == null) {
+            return false;
+        }
+        metrics.eventSuppressed();
+        // If it was only MODIFIED, it existed before, so that it's gone now is still of interest
+        return pendingFile.changeKind == ChangeKind.CREATED;
+    }
+
+    // Returns whether the file was MOVED before it was completely written, and is thus only notified at its target later
+    private synchronized boolean isMovedBeforeWritten(@Nullable Path root, Path source, Path target) {
+        // Whatever was being written at the target was replaced by what was moved there
+        @Nullable PendingFile replaced = pendingFiles.remove(target);
+        @Nullable PendingFile pendingFile = pendingFiles.remove(source);
+        if (pendingFile == null) {
+            return false;
+        }
+        metrics.eventSuppressed();
+        if (replaced != null) {
+            metrics.eventSuppressed();
+        }
+        PendingFile moved = new PendingFile(root != null ? root : pendingFile.root, target, pendingFile.changeKind,
+                pendingFile.size, pendingFile.lastModified);
+        pendingFiles.put(target, moved);
+        schedule(moved);
+        return true;
+    }
+
+    @SuppressWarnings("FutureReturnValueIgnored") // check() handles its own exceptions
+    private synchronized void schedule(PendingFile pendingFile) {
+        try {
+            scheduler.schedule(pendingFile::submit, pendingFile.intervalInMS, MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pendingFiles.remove(pendingFile.path);
+            exceptionHandler.onException(e);
+        }
+    }
+
+    private void check(PendingFile pendingFile) {
+        @Nullable BasicFileAttributes attrs = readAttributes(pendingFile.path);
+        synchronized (this) {
+            if (pendingFiles.get(pendingFile.path) != pendingFile) {
+                // DELETED or MOVED since it was scheduled
+                return;
+            }
+            if (attrs == null) {
+                // Gone, without us having been notified (yet); so there is nothing to notify about
+                pendingFiles.remove(pendingFile.path);
+                return;
+            }
+            if (pendingFile.changed || attrs.size() != pendingFile.size
+                    || !attrs.lastModifiedTime().equals(pendingFile.lastModified)) {
+                // Still being written, so check again later; the longer it takes, the less often
+                pendingFile.size = attrs.size();
+                pendingFile.lastModified = attrs.lastModifiedTime();
+                pendingFile.changed = false;
+                pendingFile.intervalInMS = Math.min(pendingFile.intervalInMS * 2, maxIntervalInMS);
+                schedule(pendingFile);
+                return;
+            }
+            pendingFiles.remove(pendingFile.path);
+        }
+        try {
+            Path root = pendingFile.root;
+            if (root != null) {
+                delegate.onEvent(new ChangeEvent(root, pendingFile.path, pendingFile.changeKind, null, attrs));
+            } else {
+                delegate.onChange(pendingFile.path, pendingFile.changeKind);
+            }
+        } catch (Throwable e) {
+            exceptionHandler.onException(e);
+        }
+    }
+
+    private static @Nullable BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Registry of which {@link WatchKey} belongs to which watched directory.
+ *
+ * <p>Keeps a Path to WatchKey map, a reverse WatchKey to Path index, and an index
+ * of registered sub-directories per parent directory, so that the keys of an entire
+ * subtree can be dropped when a directory is deleted, without scanning all keys.
+ *
+ * <p>This does not cancel keys itself, because with a shared {@link WatcherHub} a key
+ * may still be used by other watchers; see {@link WatcherHub#release(WatchKey, WatcherHub.Handler)}.
+ *
+ * @author Michael Vorburger.ch
+ */
+// intentionally package local, for now
+class WatchKeyRegistry {
+
+    private final Path root;
+    private final Map<Path, WatchKey> keysByPath = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> pathsByKey = new ConcurrentHashMap<>();
+    private final Map<Path, Set<Path>> childrenByParent = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     * @param root the watched directory, which all registered directories are in
+     */
+    WatchKeyRegistry(Path root) {
+        this.root = root;
+    }
+
+    void put(Path directory, WatchKey key) {
+        WatchKey previousKey = keysByPath.put(directory, key);
+        if (previousKey != null && previousKey != key) {
+            pathsByKey.remove(previousKey);
+        }
+        pathsByKey.put(key, directory);
+        link(directory);
+    }
+
+    // Also links parents which are not registered themselves (e.g. excluded by a FileFilter), up to one which is,
+    // so that removeSubtree() of any directory above still finds all registered directories below it; but not above root
+    private void link(Path directory) {
+        Path child = directory;
+        Path parent = parent(child);
+        while (parent != null) {
+            boolean alreadyLinked = childrenByParent.containsKey(parent) || keysByPath.containsKey(parent);
+            childrenByParent.computeIfAbsent(parent, p -> ConcurrentHashMap.newKeySet()).add(child);
+            if (alreadyLinked) {
+                return;
+            }
+            child = parent;
+            parent = parent(child);
+        }
+    }
+
+    // Reverse of link()
+    private void unlink(Path directory) {
+        Path child = directory;
+        Path parent = parent(child);
+        while (parent != null) {
+            Path removedChild = child;
+            Set<Path> siblings = childrenByParent.computeIfPresent(parent, (p, children) -> {
+                children.remove(removedChild);
+                return children.isEmpty() ? null : children;
+            });
+            if (siblings != null || keysByPath.containsKey(parent)) {
+                return;
+            }
+            child = parent;
+            parent = parent(child);
+        }
+    }
+
+    // The parent of a directory below root, or null for root itself (and anything outside of it)
+    private @Nullable Path parent(Path directory) {
+        if (directory.equals(root) || !directory.startsWith(root)) {
+            return null;
+        }
+        return directory.getParent();
+    }
+
+    /**
+     * Whether the directory is registered with a WatchKey that is still valid.
+     */
+    boolean isRegistered(Path directory) {
+        WatchKey key = keysByPath.get(directory);
+        return key != null && key.isValid();
+    }
+
+    /**
+     * Whether any sub-directories of the directory are registered; cheaper than {@link #contains(Path)} of a child,
+     * because it doesn't need the child's Path.
+     */
+    boolean hasChildren(Path directory) {
+        Set<Path> children = childrenByParent.get(directory);
+        return children != null && !children.isEmpty();
+    }
+
+    boolean contains(Path directory) {
+        return keysByPath.containsKey(directory);
+    }
+
+    /**
+     * Whether the directory, or any directory below it, is registered; e.g. a directory which is itself excluded
+     * by a FileFilter, but not its sub-directories.
+     */
+    boolean containsSubtree(Path directory) {
+        return keysByPath.containsKey(directory) || childrenByParent.containsKey(directory);
+    }
+
+    @Nullable Path path(WatchKey key) {
+        return pathsByKey.get(key);
+    }
+
+    /**
+     * Drop a key which is no longer valid, e.g. because {@link WatchKey#reset()} returned false.
+     *
+     * @return the directory which the key was registered for, or null if it was unknown
+     */
+    @Nullable Path remove(WatchKey key) {
+        Path directory = pathsByKey.remove(key);
+        if (directory != null) {
+            keysByPath.remove(directory, key);
+            if (!childrenByParent.containsKey(directory)) {
+                unlink(directory);
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * Drop the keys of a directory and all of its registered sub-directories.
+     *
+     * @return the dropped keys, which the caller should cancel
+     */
+    List<WatchKey> removeSubtree(Path directory) {
+        List<WatchKey> removed = new ArrayList<>();
+        removeSubtree(directory, removed);
+        return removed;
+    }
+
+    private void removeSubtree(Path directory, List<WatchKey> removed) {
+        WatchKey key = keysByPath.get(directory);
+        if (key != null) {
+            remove(key);
+            removed.add(key);
+        }
+        Set<Path> children = childrenByParent.get(directory);
+        if (children != null) {
+            for (Path child : List.copyOf(children)) {
+                removeSubtree(child, removed);
+            }
+        }
+        // Once its children are gone, which unlinked it, unless it was not registered itself
+        childrenByParent.remove(directory);
+        unlink(directory);
+    }
+
+    Collection<WatchKey> keys() {
+        return Collections.unmodifiableCollection(keysByPath.values());
+    }
+
+    void clear() {
+        keysByPath.clear();
+        pathsByKey.clear();
+        childrenByParent.clear();
+    }
+
+    /**
+     * How many directories are currently registered.
+     */
+    int size() {
+        return keysByPath.size();
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.DirectoryWatcher.ExceptionHandler;
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One WatchService and one Thread, shared by many watchers.
+ *
+ * <p>Each DirectoryWatcher normally has its own WatchService (which on Linux is an inotify instance) and its own Thread.
+ * Watchers built with {@link DirectoryWatcherBuilder#hub(WatcherHub)} using the same hub instead all register
+ * their directories with the hub's WatchService, and the hub's Thread routes the events of each WatchKey (which is
+ * the registration of one watchable directory) to the watchers which registered that directory.
+ * Watchers of single files (see {@link FileWatcherBuilder}) in the same directory share one registration
+ * of that directory, and its events are dispatched to them by file name.
+ *
+ * <p>You must close() a WatcherHub when you don't need it anymore, after the watchers using it.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class WatcherHub implements Closeable {
+    private final static Logger log = LoggerFactory.getLogger(WatcherHub.class);
+
+    /**
+     * Handles the events of the WatchKeys it registered.
+     */
+    interface Handler {
+        void onEvents(WatchKey key, List<WatchEvent<?>> events);
+
+        void onInvalid(WatchKey key);
+
+        /**
+         * Called (on the hub's Thread) if one of the other methods failed, so that it affects only this Handler's watcher.
+         */
+        void onException(Throwable t);
+    }
+
+    protected final WatchService watcher = FileSystems.getDefault().newWatchService(); // better final, as it will be accessed by both threads (normally OK either way, but still)
+    protected final Thread thread;
+    private final Map<WatchKey, Set<Handler>> handlers = new ConcurrentHashMap<>();
+    private final Map<Path, ParentDirectoryWatch> parentDirectoryWatches = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     * @throws IOException if the WatchService could not be created
+     */
+    public WatcherHub() throws IOException {
+        this(WatcherHub.class.getSimpleName(), new Slf4jLoggingExceptionHandler());
+    }
+
+    /**
+     * Constructor.
+     * @param exceptionHandler the exception handler, for unexpected exceptions on the hub's Thread
+     * @throws IOException if the WatchService could not be created
+     */
+    public WatcherHub(ExceptionHandler exceptionHandler) throws IOException {
+        this(WatcherHub.class.getSimpleName(), exceptionHandler);
+    }
+
+    WatcherHub(String threadName, ExceptionHandler exceptionHandler) throws IOException {
+        Runnable r = () -> {
+            for (;;) {
+                WatchKey key;
+                try {
+                    key = watcher.take();
+                } catch (ClosedWatchServiceException e) {
+                    log.debug(
+                            "WatchService take() interrupted by ClosedWatchServiceException, terminating Thread (as planned).");
+                    return;
+                } catch (InterruptedException e) {
+                    log.debug("Thread InterruptedException, terminating (as planned, if caused by close()).");
+                    return;
+                }
+                dispatch(key);
+            }
+        };
+        thread = new Thread(r, threadName);
+        thread.setDaemon(true);
+        // Because we're catch-ing expected exceptions above, this normally
+        // should never be needed, but still be better safe than sorry.. ;-)
+        thread.setUncaughtExceptionHandler((t, e) -> exceptionHandler.onException(e));
+        thread.start();
+    }
+
+    private void dispatch(WatchKey key) {
+        // pollEvents() must be called exactly once, so all handlers of a key get the same events
+        List<WatchEvent<?>> events = key.pollEvents();
+        Set<Handler> keyHandlers = handlers.get(key);
+        if (keyHandlers != null) {
+            for (Handler handler : keyHandlers) {
+                try {
+                    handler.onEvents(key, events);
+                } catch (RuntimeException e) {
+                    onException(handler, e);
+                }
+            }
+        }
+        if (!key.reset()) {
+            // The directory is no longer accessible (e.g. deleted), so we don't need to track its key anymore
+            Set<Handler> removed = handlers.remove(key);
+            if (removed != null) {
+                for (Handler handler : removed) {
+                    try {
+                        handler.onInvalid(key);
+                    } catch (RuntimeException e) {
+                        onException(handler, e);
+                    }
+                }
+            }
+        }
+    }
+
+    // A failing Handler must not stop the hub's Thread, because then none of the other watchers on it get any events anymore
+    private static void onException(Handler handler, RuntimeException e) {
+        try {
+            handler.onException(e);
+        } catch (RuntimeException e2) {
+            e2.addSuppressed(e);
+            log.error("Handler {} failed, and so did its onException()", handler, e2);
+        }
+    }
+
+    /**
+     * Register a directory for a handler. If the directory is already registered
+     * (by any handler), then this returns the same WatchKey as before.
+     */
+    synchronized WatchKey register(Path directory, Handler handler) throws IOException {
+        WatchKey key = directory.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        handlers.computeIfAbsent(key, k -> new CopyOnWriteArraySet<>()).add(handler);
+        return key;
+    }
+
+    /**
+     * Release a handler's registration of a WatchKey, and cancel the key if no other handler still uses it.
+     */
+    synchronized void release(WatchKey key, Handler handler) {
+        Set<Handler> keyHandlers = handlers.get(key);
+        if (keyHandlers == null) {
+            key.cancel();
+            return;
+        }
+        keyHandlers.remove(handler);
+        if (keyHandlers.isEmpty()) {
+            handlers.remove(key);
+            key.cancel();
+        }
+    }
+
+    /**
+     * Watch a single file, sharing the registration of its directory with other watched files in the same directory.
+     */
+    synchronized FileWatcherImpl watchFile(Path file, @Nullable WatcherHub ownHub, Listener listener, ChangeKind[] eventKinds,
+            ExceptionHandler exceptionHandler, boolean overflowRecovery) throws IOException {
+        Path parent = file.getParent();
+        if (parent == null)
+            throw new IllegalArgumentException("path does not have a parent: " + file);
+        ParentDirectoryWatch parentDirectoryWatch = parentDirectoryWatches.get(parent);
+        if (parentDirectoryWatch == null || !parentDirectoryWatch.isValid()) {
+            parentDirectoryWatch = new ParentDirectoryWatch(this, parent);
+            parentDirectoryWatches.put(parent, parentDirectoryWatch);
+        }
+        FileWatcherImpl fileWatcher = new FileWatcherImpl(parentDirectoryWatch, ownHub, file, listener, eventKinds,
+                exceptionHandler, overflowRecovery);
+        parentDirectoryWatch.add(fileWatcher);
+        return fileWatcher;
+    }
+
+    synchronized void releaseIfUnused(ParentDirectoryWatch parentDirectoryWatch) {
+        if (parentDirectoryWatch.isEmpty()) {
+            parentDirectoryWatches.remove(parentDirectoryWatch.directory(), parentDirectoryWatch);
+            parentDirectoryWatch.release();
+        }
+    }
+
+    synchronized void forget(ParentDirectoryWatch parentDirectoryWatch) {
+        parentDirectoryWatches.remove(parentDirectoryWatch.directory(), parentDirectoryWatch);
+    }
+
+    /**
+     * How many WatchKeys (watched directories) are registered, by all watchers together.
+     * @return number of registered keys
+     */
+    public int size() {
+        return handlers.size();
+    }
+
+    @Override
+    public void close() {
+        // The order here is important - first we stop the Thread, then close the Watcher.
+        thread.interrupt();
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            log.error("WatchService close() failed", e);
+        }
+        handlers.clear();
+        parentDirectoryWatches.clear();
+    }
+
+    @Override
+    public String toString() {
+        return thread.getName();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+
+/**
+ * Metrics SPI, to observe what watchers do internally; set it with {@link DirectoryWatcherBuilder#metrics(WatcherMetrics)}.
+ *
+ * <p>All methods have empty defaults, so implementations only need to override what they are interested in.
+ * They are called from the watcher's and scheduler's threads, so they have to be thread safe and fast.
+ * See {@link JmxWatcherMetrics} for an implementation which exposes them as an MXBean; adapting this to e.g.
+ * Micrometer counters, gauges and timers is just as simple.
+ *
+ * @author Michael Vorburger.ch
+ */
+public interface WatcherMetrics {
+
+    /**
+     * The default, which does nothing. When it is used, watchers do not even measure the durations.
+     */
+    WatcherMetrics NONE = new WatcherMetrics() { };
+
+    /**
+     * Called (once) by every watcher which uses this, when it is built. Its directoriesRegistered() are then called
+     * on what this returns, so that implementations which are shared by several watchers can tell them apart.
+     * @return this, or a view of it for one watcher
+     */
+    default WatcherMetrics forWatcher() {
+        return this;
+    }
+
+    /**
+     * Called whenever the number of directories registered by a directory watcher changed, and with 0 when it is closed.
+     * @param count how many directories are currently registered (by this watcher, see {@link #forWatcher()})
+     */
+    default void directoriesRegistered(int count) { }
+
+    /**
+     * Called for each event received from the WatchService (not including OVERFLOW).
+     * @param changeKind the kind of change
+     */
+    default void eventReceived(ChangeKind changeKind) { }
+
+    /**
+     * Called for each event which the listener is not notified about, because its kind was not requested.
+     * @param changeKind the kind of change
+     * @see DirectoryWatcherBuilder#eventKinds(ChangeKind...)
+     */
+    default void eventFiltered(ChangeKind changeKind) { }
+
+    /**
+     * Called whenever the WatchService signalled an OVERFLOW, meaning that events were lost.
+     */
+    default void overflow() { }
+
+    /**
+     * Called after each invocation of the Listener (or BatchListener).
+     * @param durationInNanos how long the listener took
+     */
+    default void listenerInvoked(long durationInNanos) { }
+
+    /**
+     * Called for each change which was not notified on its own. That is, it came during the quiet period of another
+     * (see {@link DirectoryWatcherBuilder#quietPeriodInMS(long)}), it was merged with a pending change of the same
+     * path, it did not change the content of the file (see {@link DirectoryWatcherBuilder#contentHashing(boolean)}),
+     * or it came while the file was still being written (see {@link DirectoryWatcherBuilder#stableFiles(long, long)}).
+     */
+    default void eventSuppressed() { }
+
+    /**
+     * Called after each walk of a directory tree to register its directories.
+     * @param directories how many directories were registered by this walk
+     * @param durationInNanos how long the walk took
+     */
+    default void registrationWalked(int directories, long durationInNanos) { }
+}
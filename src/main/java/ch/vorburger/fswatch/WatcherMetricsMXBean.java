@@ -0,0 +1,63 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link JmxWatcherMetrics}.
+ *
+ * @author Michael Vorburger.ch
+ */
+public interface WatcherMetricsMXBean {
+
+    /** Returns how many directories are currently registered (by all watchers together). */
+    int getRegisteredDirectories();
+
+    /** Returns how many events were received from the WatchService, by kind. */
+    Map<String, Long> getEventsReceived();
+
+    /** Returns how many events were not notified because their kind was not requested. */
+    long getEventsFiltered();
+
+    /** Returns how many times the WatchService signalled an OVERFLOW. */
+    long getOverflows();
+
+    /** Returns how many times the listener was invoked. */
+    long getListenerInvocations();
+
+    /** Returns the average duration of listener invocations, in microseconds. */
+    double getListenerAverageMicros();
+
+    /** Returns the longest duration of a listener invocation, in microseconds. */
+    long getListenerMaxMicros();
+
+    /** Returns how many listener invocations took up to 10, 100 µs, 1, 10, 100 ms, 1 s, and longer. */
+    Map<String, Long> getListenerLatencyHistogram();
+
+    /** Returns how many changes were not notified on their own, see {@link WatcherMetrics#eventSuppressed()}. */
+    long getEventsSuppressed();
+
+    /** Returns how many walks were made to register directory trees. */
+    long getRegistrationWalks();
+
+    /** Returns how long the last walk to register a directory tree (by any of the watchers) took, in milliseconds. */
+    long getLastRegistrationWalkMillis();
+}
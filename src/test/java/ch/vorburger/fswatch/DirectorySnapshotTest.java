@@ -0,0 +1,93 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static org.junit.Assert.assertEquals;
+
+import ch.vorburger.fswatch.DirectorySnapshot.FileState;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DirectorySnapshot}.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class DirectorySnapshotTest {
+
+    @Test
+    public void testDiff() {
+        DirectorySnapshot older = new DirectorySnapshot();
+        older.put(Path.of("unchanged.txt"), new FileState(1, 1000, 1, false));
+        older.put(Path.of("bigger.txt"), new FileState(1, 1000, 2, false));
+        older.put(Path.of("touched.txt"), new FileState(1, 1000, 3, false));
+        older.put(Path.of("replaced.txt"), new FileState(1, 1000, 4, false));
+        older.put(Path.of("deleted.txt"), new FileState(1, 1000, 5, false));
+        older.put(Path.of("dir"), new FileState(4096, 1000, 6, true));
+        older.put(Path.of("deletedDir"), new FileState(4096, 1000, 7, true));
+        older.put(Path.of("fileThenDir"), new FileState(1, 1000, 8, false));
+
+        DirectorySnapshot newer = new DirectorySnapshot();
+        newer.put(Path.of("unchanged.txt"), new FileState(1, 1000, 1, false));
+        newer.put(Path.of("bigger.txt"), new FileState(2, 1000, 2, false));
+        newer.put(Path.of("touched.txt"), new FileState(1, 2000, 3, false));
+        newer.put(Path.of("replaced.txt"), new FileState(1, 1000, 9, false));
+        // A directory whose entries changed is not MODIFIED itself (its entries have their own snapshot)
+        newer.put(Path.of("dir"), new FileState(8192, 2000, 6, true));
+        newer.put(Path.of("fileThenDir"), new FileState(4096, 1000, 8, true));
+        newer.put(Path.of("created.txt"), new FileState(1, 1000, 10, false));
+        newer.put(Path.of("createdDir"), new FileState(4096, 1000, 11, true));
+
+        assertEquals(Set.of("MODIFIED bigger.txt", "MODIFIED touched.txt", "MODIFIED replaced.txt",
+                "DELETED deleted.txt", "DELETED deletedDir/", "DELETED fileThenDir", "CREATED fileThenDir/",
+                "CREATED created.txt", "CREATED createdDir/"), diff(older, newer));
+    }
+
+    @Test
+    public void testDiffOfEmpty() {
+        DirectorySnapshot snapshot = new DirectorySnapshot();
+        snapshot.put(Path.of("a.txt"), new FileState(1, 1000, 1, false));
+        snapshot.put(Path.of("b"), new FileState(4096, 1000, 2, true));
+        assertEquals(Set.of("CREATED a.txt", "CREATED b/"), diff(new DirectorySnapshot(), snapshot));
+        assertEquals(Set.of("DELETED a.txt", "DELETED b/"), diff(snapshot, new DirectorySnapshot()));
+        assertEquals(Set.of(), diff(snapshot, snapshot));
+    }
+
+    @Test
+    public void testDiffOrderOfReplacedByDirectory() {
+        DirectorySnapshot older = new DirectorySnapshot();
+        older.put(Path.of("x"), new FileState(1, 1000, 1, false));
+        DirectorySnapshot newer = new DirectorySnapshot();
+        newer.put(Path.of("x"), new FileState(4096, 1000, 1, true));
+        List<String> changes = new ArrayList<>();
+        older.diff(newer, (fileName, changeKind, isDirectory) -> changes.add(changeKind + " " + fileName + (isDirectory ? "/" : "")));
+        assertEquals(List.of("DELETED x", "CREATED x/"), changes);
+    }
+
+    private static Set<String> diff(DirectorySnapshot older, DirectorySnapshot newer) {
+        Set<String> changes = new TreeSet<>();
+        older.diff(newer, (fileName, changeKind, isDirectory) -> changes.add(changeKind + " " + fileName + (isDirectory ? "/" : "")));
+        return changes;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.test.AssertableExceptionHandler;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import org.jspecify.annotations.Nullable;
+import org.junit.Test;
+
+/**
+ * Tests for (the package local parts of) {@link DirectoryWatcherImpl}.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class DirectoryWatcherImplTest {
+
+    @Test
+    public void testRecoverFromOverflow() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        Path dir = Path.of("target/tests/DirectoryWatcherImplTest/overflow").toAbsolutePath();
+        if (Files.exists(dir)) {
+            MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        Files.createDirectories(dir);
+        Files.writeString(dir.resolve("modified.txt"), "a", US_ASCII);
+        Files.writeString(dir.resolve("deleted.txt"), "a", US_ASCII);
+        Files.writeString(dir.resolve("unchanged.txt"), "a", US_ASCII);
+
+        Set<String> changes = new ConcurrentSkipListSet<>();
+        DirectoryWatcherImpl.Options options = new DirectoryWatcherImpl.Options();
+        options.eventKinds = new ChangeKind[] { ChangeKind.CREATED, ChangeKind.MODIFIED, ChangeKind.DELETED };
+        options.overflowRecovery = true;
+        try (DirectoryWatcherImpl watcher = new DirectoryWatcherImpl(dir,
+                (path, changeKind) -> changes.add(changeKind + " " + dir.relativize(path)), assertableExceptionHandler, options)) {
+            WatchKey key = watcher.registry.keys().iterator().next();
+            // So that the WatchService does not notify about these changes, like when its events were lost
+            key.cancel();
+            Files.writeString(dir.resolve("modified.txt"), "changed", US_ASCII);
+            Files.delete(dir.resolve("deleted.txt"));
+            Files.writeString(dir.resolve("created.txt"), "a", US_ASCII);
+            Files.createDirectories(dir.resolve("createdDir"));
+
+            watcher.processEvents(key, List.of(OverflowEvent.INSTANCE, OverflowEvent.INSTANCE));
+            assertEquals(Set.of("MODIFIED modified.txt", "DELETED deleted.txt", "CREATED created.txt", "CREATED createdDir"),
+                    changes);
+            // The created directory is now watched as well
+            assertTrue(watcher.registry.isRegistered(dir.resolve("createdDir")));
+
+            // Once recovered, the same OVERFLOW has nothing more to notify
+            changes.clear();
+            watcher.processEvents(key, List.of(OverflowEvent.INSTANCE));
+            assertEquals(Set.of(), changes);
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    private enum OverflowEvent implements WatchEvent<@Nullable Object> {
+        INSTANCE;
+
+        @Override
+        public Kind<@Nullable Object> kind() {
+            return StandardWatchEventKinds.OVERFLOW;
+        }
+
+        @Override
+        public int count() {
+            return 1;
+        }
+
+        @Override
+        public @Nullable Object context() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import ch.vorburger.fswatch.DirectorySnapshot.FileState;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PersistentSnapshot}.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class PersistentSnapshotTest {
+
+    private final Path base = Path.of("target/tests/PersistentSnapshotTest").toAbsolutePath();
+    private final Path file = Path.of("target/tests/PersistentSnapshotTest.snapshot");
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        Files.deleteIfExists(file);
+        PersistentSnapshot persistentSnapshot = new PersistentSnapshot(file, base, DefaultScheduler.instance());
+        assertNull(persistentSnapshot.load());
+
+        DirectorySnapshot root = new DirectorySnapshot();
+        root.put(Path.of("a.txt"), new FileState(1, 1000, 1, false));
+        root.put(Path.of("sub"), new FileState(4096, 2000, 2, true));
+        DirectorySnapshot sub = new DirectorySnapshot();
+        sub.put(Path.of("b.txt"), new FileState(3, 3000, -3, false));
+        persistentSnapshot.changed();
+        persistentSnapshot.store(Map.of(base, root, base.resolve("sub"), sub));
+
+        Map<Path, DirectorySnapshot> loaded = persistentSnapshot.load();
+        assertNotNull(loaded);
+        assertEquals(2, loaded.size());
+        assertEquals(root.entries(), Objects.requireNonNull(loaded.get(base)).entries());
+        assertEquals(sub.entries(), Objects.requireNonNull(loaded.get(base.resolve("sub"))).entries());
+    }
+
+    @Test
+    public void testNamesTooLongAreNotStored() throws Exception {
+        Files.deleteIfExists(file);
+        PersistentSnapshot persistentSnapshot = new PersistentSnapshot(file, base, DefaultScheduler.instance());
+
+        String tooLong = "x".repeat(0x10000);
+        DirectorySnapshot root = new DirectorySnapshot();
+        root.put(Path.of("a.txt"), new FileState(1, 1000, 1, false));
+        root.put(Path.of(tooLong), new FileState(2, 2000, 2, false));
+        root.put(Path.of("x".repeat(0xFFFF)), new FileState(3, 3000, 3, false));
+        DirectorySnapshot tooLongDirectory = new DirectorySnapshot();
+        tooLongDirectory.put(Path.of("b.txt"), new FileState(4, 4000, 4, false));
+        persistentSnapshot.changed();
+        persistentSnapshot.store(Map.of(base, root, base.resolve(tooLong), tooLongDirectory));
+
+        Map<Path, DirectorySnapshot> loaded = persistentSnapshot.load();
+        assertNotNull(loaded);
+        assertEquals(1, loaded.size());
+        assertEquals(Map.of(Path.of("a.txt"), new FileState(1, 1000, 1, false),
+                Path.of("x".repeat(0xFFFF)), new FileState(3, 3000, 3, false)), Objects.requireNonNull(loaded.get(base)).entries());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.Watchable;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+/**
+ * Tests for {@link WatchKeyRegistry}.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class WatchKeyRegistryTest {
+
+    Path root = Path.of("/root");
+    WatchKeyRegistry registry = new WatchKeyRegistry(root);
+
+    @Test
+    public void testPutAndRemove() {
+        WatchKey rootKey = put(root);
+        WatchKey childKey = put(root.resolve("a"));
+        assertEquals(2, registry.size());
+        assertTrue(registry.isRegistered(root.resolve("a")));
+        assertTrue(registry.hasChildren(root));
+        assertEquals(root, registry.path(rootKey));
+
+        assertEquals(root.resolve("a"), registry.remove(childKey));
+        assertFalse(registry.contains(root.resolve("a")));
+        assertFalse(registry.hasChildren(root));
+        assertNull(registry.remove(childKey));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testPutAgainReplacesKey() {
+        WatchKey oldKey = put(root);
+        WatchKey newKey = put(root);
+        assertEquals(1, registry.size());
+        assertNull(registry.path(oldKey));
+        assertEquals(root, registry.path(newKey));
+    }
+
+    @Test
+    public void testRemoveSubtree() {
+        put(root);
+        WatchKey a = put(root.resolve("a"));
+        WatchKey ab = put(root.resolve("a/b"));
+        WatchKey abc = put(root.resolve("a/b/c"));
+        put(root.resolve("d"));
+
+        assertEquals(Set.of(a, ab, abc), Set.copyOf(registry.removeSubtree(root.resolve("a"))));
+        assertEquals(2, registry.size());
+        assertFalse(registry.containsSubtree(root.resolve("a")));
+        assertTrue(registry.hasChildren(root));
+        assertTrue(registry.removeSubtree(root.resolve("a")).isEmpty());
+    }
+
+    @Test
+    public void testRemoveSubtreeOfUnregisteredParent() {
+        // e.g. root/excluded is excluded by a FileFilter, but root/excluded/child is not
+        put(root);
+        WatchKey child = put(root.resolve("excluded/child"));
+        WatchKey grandChild = put(root.resolve("excluded/child/grandChild"));
+        assertTrue(registry.hasChildren(root));
+        assertFalse(registry.contains(root.resolve("excluded")));
+        assertTrue(registry.containsSubtree(root.resolve("excluded")));
+
+        assertEquals(Set.of(child, grandChild), Set.copyOf(registry.removeSubtree(root.resolve("excluded"))));
+        assertEquals(1, registry.size());
+        assertFalse(registry.containsSubtree(root.resolve("excluded")));
+        assertFalse(registry.hasChildren(root));
+    }
+
+    @Test
+    public void testRemoveLastChildOfUnregisteredParent() {
+        put(root);
+        WatchKey child = put(root.resolve("excluded/child"));
+        registry.remove(child);
+        assertFalse(registry.containsSubtree(root.resolve("excluded")));
+        assertFalse(registry.hasChildren(root));
+    }
+
+    @Test
+    public void testRemoveOfParentKeepsChildren() {
+        put(root);
+        WatchKey a = put(root.resolve("a"));
+        WatchKey ab = put(root.resolve("a/b"));
+        registry.remove(a);
+        // e.g. if the key of a/ was invalidated, a/b/ is still registered, and goes with its parent
+        assertEquals(List.of(ab), registry.removeSubtree(root.resolve("a")));
+        assertEquals(List.of(root), registry.keys().stream().map(registry::path).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testNothingIsLinkedAboveRoot() {
+        put(root);
+        put(root.resolve("a/b"));
+        assertTrue(registry.hasChildren(root));
+        assertTrue(registry.containsSubtree(root.resolve("a")));
+        // Not the parents of the watched directory, up to the root of the filesystem
+        assertFalse(registry.hasChildren(root.getRoot()));
+        assertFalse(registry.containsSubtree(root.getRoot()));
+    }
+
+    private WatchKey put(Path directory) {
+        WatchKey key = new FakeWatchKey(directory);
+        registry.put(directory, key);
+        return key;
+    }
+
+    private static class FakeWatchKey implements WatchKey {
+        private final Path directory;
+        private boolean valid = true;
+
+        FakeWatchKey(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public boolean isValid() {
+            return valid;
+        }
+
+        @Override
+        public List<WatchEvent<?>> pollEvents() {
+            return List.of();
+        }
+
+        @Override
+        public boolean reset() {
+            return valid;
+        }
+
+        @Override
+        public void cancel() {
+            valid = false;
+        }
+
+        @Override
+        public Watchable watchable() {
+            return directory;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+/**
+ * Tests for {@link XxHash64}, with known answers of the reference implementation.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class XxHash64Test {
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0xEF46DB3751D8E999L, hash("", 0));
+    }
+
+    @Test
+    public void testShorterThan4() {
+        assertEquals(0xD24EC4F1A98C6E5BL, hash("a", 0));
+        assertEquals(0x44BC2CF5AD770999L, hash("abc", 0));
+    }
+
+    @Test
+    public void testShorterThan8() {
+        assertEquals(0xDE0327B0D25D92CCL, hash("abcd", 0));
+        assertEquals(0x1860940E2902822DL, hash("abcdefg", 0));
+    }
+
+    @Test
+    public void testShorterThan32() {
+        assertEquals(0x3AD351775B4634B7L, hash("abcdefgh", 0));
+        assertEquals(0xCFE1F278FA89835CL, hash("abcdefghijklmnopqrstuvwxyz", 0));
+    }
+
+    @Test
+    public void testAtLeast32() {
+        assertEquals(0xCBF59C5116FF32B4L, XxHash64.hash(ByteBuffer.wrap(bytes(32)), 0));
+        assertEquals(0x6AC1E58032166597L, XxHash64.hash(ByteBuffer.wrap(bytes(100)), 0));
+    }
+
+    @Test
+    public void testSeed() {
+        assertEquals(0xBEA9CA8199328908L, hash("abc", 1));
+        assertEquals(0x3D19A3A2098A7023L, XxHash64.hash(ByteBuffer.wrap(bytes(100)), 1));
+    }
+
+    @Test
+    public void testOnlyRemainingBytes() {
+        ByteBuffer heap = ByteBuffer.wrap(bytes(110));
+        heap.position(10);
+        heap.limit(50);
+        ByteBuffer direct = ByteBuffer.allocateDirect(40);
+        direct.put(heap.duplicate()).flip();
+        long expected = XxHash64.hash(ByteBuffer.wrap(heap.array(), 10, 40).slice(), 0);
+        assertEquals(expected, XxHash64.hash(heap, 0));
+        assertEquals(expected, XxHash64.hash(direct, 0));
+        // and it does not consume them
+        assertEquals(10, heap.position());
+    }
+
+    private static long hash(String input, long seed) {
+        return XxHash64.hash(ByteBuffer.wrap(input.getBytes(US_ASCII)), seed);
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch.test;
+
+import static ch.vorburger.fswatch.DirectoryWatcher.ChangeKind.CREATED;
+import static ch.vorburger.fswatch.DirectoryWatcher.ChangeKind.DELETED;
+import static ch.vorburger.fswatch.DirectoryWatcher.ChangeKind.MODIFIED;
+import static com.google.common.base.Charsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+
+import ch.vorburger.fswatch.ContentHashingListener;
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+import com.google.common.io.Files;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ContentHashingListener}.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class ContentHashingListenerTest {
+
+    List<String> notified = new ArrayList<>();
+    Listener listener = new ContentHashingListener((path, changeKind) -> notified.add(changeKind + " " + path.getFileName()));
+
+    @Test
+    public void testUnchangedContentIsDropped() throws Throwable {
+        File file = new File("target/tests/ContentHashingListenerTest/hello.txt");
+        file.getParentFile().mkdirs();
+        Path path = file.toPath();
+        Files.asCharSink(file, US_ASCII).write("hello");
+        listener.onChange(path, CREATED);
+
+        // Rewritten with the same content, or only touched
+        Files.asCharSink(file, US_ASCII).write("hello");
+        listener.onChange(path, MODIFIED);
+        file.setLastModified(file.lastModified() + 1000);
+        listener.onChange(path, MODIFIED);
+
+        Files.asCharSink(file, US_ASCII).write("world");
+        listener.onChange(path, MODIFIED);
+        listener.onChange(path, MODIFIED);
+
+        file.delete();
+        listener.onChange(path, DELETED);
+
+        assertEquals(List.of("CREATED hello.txt", "MODIFIED hello.txt", "DELETED hello.txt"), notified);
+    }
+
+    @Test
+    public void testFirstModificationOfUnknownFileIsPassedOn() throws Throwable {
+        File file = new File("target/tests/ContentHashingListenerTest/unknown.txt");
+        file.getParentFile().mkdirs();
+        Files.asCharSink(file, US_ASCII).write("hello");
+        listener.onChange(file.toPath(), MODIFIED);
+        listener.onChange(file.toPath(), MODIFIED);
+        assertEquals(List.of("MODIFIED unknown.txt"), notified);
+    }
+}
@@ -23,18 +23,45 @@ import static com.google.common.base.Charsets.US_ASCII;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.awaitility.Awaitility.await;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import ch.vorburger.fswatch.ChangeEvent;
+import ch.vorburger.fswatch.ChangePublisher;
 import ch.vorburger.fswatch.DirectoryWatcher;
 import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
+import ch.vorburger.fswatch.DirectoryWatcher.ExceptionHandler;
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+import ch.vorburger.fswatch.DirectoryWatcherBackend;
 import ch.vorburger.fswatch.DirectoryWatcherBuilder;
 import ch.vorburger.fswatch.FileWatcherBuilder;
+import ch.vorburger.fswatch.JmxWatcherMetrics;
+import ch.vorburger.fswatch.WatcherHub;
+import ch.vorburger.fswatch.WatcherMetrics;
 import com.google.common.io.Files;
 import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import javax.management.ObjectName;
 
 import org.jspecify.annotations.Nullable;
 import org.junit.BeforeClass;
@@ -152,6 +179,465 @@ public class DirectoryAndFileWatcherTest {
         }
     }
 
+    @Test
+    public void testDirectoryWatcherNewNestedSubDirectories() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir = new File("target/tests/DirectoryWatcherNestedTest");
+        dir.mkdirs();
+        final File nestedDir = new File(dir, "a/b/c");
+        MoreFiles.deleteDirectoryContents(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        File newFile = new File(nestedDir, "yo.txt");
+
+        changed = false;
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).listener((p, c) -> {
+            if (p.equals(newFile.toPath())) {
+                changed = true;
+            }
+        }).exceptionHandler(assertableExceptionHandler).build()) {
+            assertTrue(nestedDir.mkdirs());
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+
+            Files.asCharSink(newFile, US_ASCII).write("yo");
+            await().atMost(30, SECONDS).until(() -> changed, is(true));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherIncludeExclude() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir = new File("target/tests/DirectoryWatcherIncludeExcludeTest");
+        dir.mkdirs();
+        MoreFiles.deleteDirectoryContents(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        final File excludedDir = new File(dir, "a/node_modules/b");
+        assertTrue(excludedDir.mkdirs());
+        File excludedFile = new File(excludedDir, "yo.txt");
+        File ignoredFile = new File(dir, "a/yo.class");
+        File includedFile = new File(dir, "a/yo.txt");
+
+        List<Path> seen = new CopyOnWriteArrayList<>();
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).include("**/*.txt")
+                .exclude("**/node_modules/**", "**/*.class").listener((p, c) -> seen.add(p))
+                .exceptionHandler(assertableExceptionHandler).build()) {
+            Files.asCharSink(excludedFile, US_ASCII).write("yo");
+            Files.asCharSink(ignoredFile, US_ASCII).write("yo");
+            Files.asCharSink(includedFile, US_ASCII).write("yo");
+            await().atMost(30, SECONDS).until(() -> seen.contains(includedFile.toPath()));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+            assertFalse(seen.contains(excludedFile.toPath()));
+            assertFalse(seen.contains(ignoredFile.toPath()));
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherMetrics() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir = new File("target/tests/DirectoryWatcherMetricsTest/a/b");
+        dir.mkdirs();
+        File file = new File(dir, "yo.txt");
+
+        try (JmxWatcherMetrics metrics = new JmxWatcherMetrics("DirectoryWatcherMetricsTest");
+             DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir.getParentFile().getParentFile())
+                .metrics(metrics).listener((p, c) -> { }).exceptionHandler(assertableExceptionHandler).build()) {
+            assertEquals(3, metrics.getRegisteredDirectories());
+            assertEquals(1, metrics.getRegistrationWalks());
+            assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+                    new ObjectName("ch.vorburger.fswatch:type=WatcherMetrics,name=\"DirectoryWatcherMetricsTest\"")));
+
+            Files.asCharSink(file, US_ASCII).write("yo");
+            await().atMost(30, SECONDS).until(() -> metrics.getListenerInvocations() > 0);
+            assertTrue(metrics.getEventsReceived().values().stream().mapToLong(Long::longValue).sum() > 0);
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherMetricsCountHeldBackDeletedOnce() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir = new File("target/tests/DirectoryWatcherMetricsHeldBackTest");
+        dir.mkdirs();
+        File file = new File(dir, "yo.txt");
+        Files.asCharSink(file, US_ASCII).write("yo");
+
+        try (JmxWatcherMetrics metrics = new JmxWatcherMetrics("DirectoryWatcherMetricsHeldBackTest");
+             DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).eventKinds(ChangeKind.MOVED)
+                .metrics(metrics).listener((p, c) -> { }).exceptionHandler(assertableExceptionHandler).build()) {
+            // The DELETED is held back, in case it was MOVED, and then dropped because only MOVED was requested
+            assertTrue(file.delete());
+            await().atMost(30, SECONDS).until(() -> metrics.getEventsReceived().getOrDefault("DELETED", 0L), is(1L));
+            Thread.sleep(500);
+            long received = metrics.getEventsReceived().values().stream().mapToLong(Long::longValue).sum();
+            assertEquals(received, metrics.getEventsFiltered());
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherMetricsSharedByTwoWatchers() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir1 = new File("target/tests/DirectoryWatcherSharedMetricsTest/one/a/b");
+        final File dir2 = new File("target/tests/DirectoryWatcherSharedMetricsTest/two/a");
+        dir1.mkdirs();
+        dir2.mkdirs();
+
+        try (JmxWatcherMetrics metrics = new JmxWatcherMetrics("DirectoryWatcherSharedMetricsTest")) {
+            try (DirectoryWatcher dw1 = new DirectoryWatcherBuilder().path(dir1.getParentFile().getParentFile())
+                    .metrics(metrics).listener((p, c) -> { }).exceptionHandler(assertableExceptionHandler).build()) {
+                try (DirectoryWatcher dw2 = new DirectoryWatcherBuilder().path(dir2.getParentFile())
+                        .metrics(metrics).listener((p, c) -> { }).exceptionHandler(assertableExceptionHandler).build()) {
+                    assertEquals(3 + 2, metrics.getRegisteredDirectories());
+                    assertEquals(2, metrics.getRegistrationWalks());
+                }
+                assertEquals(3, metrics.getRegisteredDirectories());
+            }
+            assertEquals(0, metrics.getRegisteredDirectories());
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testPollingDirectoryWatcher() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir = new File("target/tests/PollingDirectoryWatcherTest");
+        dir.mkdirs();
+        MoreFiles.deleteDirectoryContents(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        File file = new File(dir, "yo.txt");
+        Files.asCharSink(file, US_ASCII).write("yo");
+        File nestedFile = new File(dir, "a/b/yo.txt");
+
+        List<String> seen = new CopyOnWriteArrayList<>();
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).polling(20, 200).quietPeriodInMS(0)
+                .eventKinds(ChangeKind.values())
+                .batchListener(changes -> changes.forEach((p, c) -> seen.add(c + " " + dir.toPath().relativize(p))))
+                .exceptionHandler(assertableExceptionHandler).build()) {
+            Files.asCharSink(file, US_ASCII).write("ho ho");
+            await().atMost(30, SECONDS).until(() -> seen.contains("MODIFIED yo.txt"));
+
+            assertTrue(nestedFile.getParentFile().mkdirs());
+            Files.asCharSink(nestedFile, US_ASCII).write("yo");
+            await().atMost(30, SECONDS).until(() -> seen.contains("CREATED a/b/yo.txt"));
+
+            assertTrue(file.delete());
+            await().atMost(30, SECONDS).until(() -> seen.contains("DELETED yo.txt"));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherBackend() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir = new File("target/tests/DirectoryWatcherBackendTest");
+        dir.mkdirs();
+        AtomicReference<Listener> backendListener = new AtomicReference<>();
+        DirectoryWatcherBackend backend = new DirectoryWatcherBackend() {
+            @Override
+            public boolean supports(Path directory) {
+                return true;
+            }
+
+            @Override
+            public DirectoryWatcher watch(Path directory, Predicate<Path> watchDirectory, Listener listener,
+                    ExceptionHandler exceptionHandler) {
+                assertFalse(watchDirectory.test(directory.resolve("node_modules")));
+                backendListener.set(listener);
+                return () -> backendListener.set(null);
+            }
+        };
+
+        List<Path> seen = new CopyOnWriteArrayList<>();
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).backend(backend).exclude("**/node_modules/**")
+                .listener((p, c) -> seen.add(p)).exceptionHandler(assertableExceptionHandler).build()) {
+            Path excluded = dir.toPath().resolve("node_modules/yo.txt");
+            Path included = dir.toPath().resolve("yo.txt");
+            Listener listener = Objects.requireNonNull(backendListener.get());
+            listener.onChange(excluded, ChangeKind.MODIFIED);
+            listener.onChange(included, ChangeKind.MODIFIED);
+            await().atMost(30, SECONDS).until(() -> seen.contains(included));
+            assertFalse(seen.contains(excluded));
+        }
+        assertEquals(null, backendListener.get());
+        assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+    }
+
+    @Test
+    public void testDirectoryWatcherParallelRegistration() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir = new File("target/tests/DirectoryWatcherParallelRegistrationTest");
+        for (int i = 0; i < 10; i++) {
+            new File(dir, i + "/a/b").mkdirs();
+        }
+        File file = new File(dir, "7/a/b/yo.txt");
+        Files.asCharSink(file, US_ASCII).write("yo");
+
+        changed = false;
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).registrationParallelism(4).awaitRegistration(false)
+                .listener((p, c) -> changed |= p.equals(file.toPath())).exceptionHandler(assertableExceptionHandler).build()) {
+            dw.registration().get(30, SECONDS);
+            Files.asCharSink(file, US_ASCII).write("ho");
+            await().atMost(30, SECONDS).until(() -> changed, is(true));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherParallelRegistrationAwaited() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir = new File("target/tests/DirectoryWatcherParallelRegistrationAwaitedTest");
+        for (int i = 0; i < 10; i++) {
+            new File(dir, i + "/a/b").mkdirs();
+        }
+        File file = new File(dir, "3/a/b/yo.txt");
+        Files.asCharSink(file, US_ASCII).write("yo");
+
+        changed = false;
+        try (JmxWatcherMetrics metrics = new JmxWatcherMetrics("DirectoryWatcherParallelRegistrationAwaitedTest");
+             DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).registrationParallelism(4).metrics(metrics)
+                .listener((p, c) -> changed |= p.equals(file.toPath())).exceptionHandler(assertableExceptionHandler).build()) {
+            // build() without awaitRegistration(false) only returns once all directories are registered
+            assertTrue(dw.registration().isDone());
+            assertEquals(31, metrics.getRegisteredDirectories());
+            Files.asCharSink(file, US_ASCII).write("ho");
+            await().atMost(30, SECONDS).until(() -> changed, is(true));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherBuildAsyncWithParallelRegistration() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir = new File("target/tests/DirectoryWatcherBuildAsyncTest");
+        if (dir.exists()) {
+            MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        for (int i = 0; i < 10; i++) {
+            new File(dir, i + "/a/b").mkdirs();
+        }
+        File newDir = new File(dir, "7/a/b/c");
+
+        changed = false;
+        List<Integer> progress = new CopyOnWriteArrayList<>();
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).registrationParallelism(4)
+                .registrationProgress(progress::add).eventKinds(ChangeKind.values()).listener((p, c) -> changed |= p.equals(newDir.toPath()))
+                .exceptionHandler(assertableExceptionHandler).buildAsync()) {
+            dw.registration().get(30, SECONDS);
+            assertEquals(List.of(31), progress);
+
+            // Directories created later are registered as well, but that's not reported as progress
+            assertTrue(newDir.mkdir());
+            await().atMost(30, SECONDS).until(() -> changed, is(true));
+            assertEquals(List.of(31), progress);
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherWithOverflowRecovery() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir = new File("target/tests/DirectoryWatcherOverflowRecoveryTest/sub");
+        dir.mkdirs();
+        File file = new File(dir, "yo.txt");
+        Files.asCharSink(file, US_ASCII).write("yo");
+
+        changed = false;
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir.getParentFile()).overflowRecovery(true)
+                .listener((p, c) -> changed = true).exceptionHandler(assertableExceptionHandler).build()) {
+            await().atMost(5, SECONDS).until(() -> changed, is(true));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+
+            changed = false;
+            Files.asCharSink(file, US_ASCII).write("ho");
+            await().atMost(30, SECONDS).until(() -> changed, is(true));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+
+            changed = false;
+            MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+            await().atMost(30, SECONDS).until(() -> changed, is(true));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testWatchersSharingHub() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir = new File("target/tests/WatcherHubTest/");
+        dir.mkdirs();
+        File file = new File(dir, "yo.txt");
+        File anotherFile = new File(dir, "another.txt");
+        Files.asCharSink(file, US_ASCII).write("yo");
+        Files.asCharSink(anotherFile, US_ASCII).write("yo");
+
+        AtomicInteger fileChanges = new AtomicInteger();
+        AtomicInteger anotherFileChanges = new AtomicInteger();
+        try (WatcherHub hub = new WatcherHub(assertableExceptionHandler)) {
+            DirectoryWatcher fw = new FileWatcherBuilder().hub(hub).path(file)
+                    .listener((p, c) -> fileChanges.incrementAndGet())
+                    .exceptionHandler(assertableExceptionHandler).build();
+            try (DirectoryWatcher dw = new FileWatcherBuilder().hub(hub).path(anotherFile)
+                    .listener((p, c) -> anotherFileChanges.incrementAndGet())
+                    .exceptionHandler(assertableExceptionHandler).build()) {
+                // Both watch the same directory, with one and the same WatchKey
+                assertEquals(1, hub.size());
+                await().atMost(5, SECONDS).until(() -> fileChanges.get() == 1 && anotherFileChanges.get() == 1);
+                assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+
+                Files.asCharSink(file, US_ASCII).write("ho");
+                await().atMost(30, SECONDS).until(fileChanges::get, is(2));
+                assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+
+                Files.asCharSink(anotherFile, US_ASCII).write("ho");
+                await().atMost(30, SECONDS).until(anotherFileChanges::get, is(2));
+                assertEquals(2, fileChanges.get());
+
+                // Closing one watcher must not affect the other one (which shares the same WatchKey)
+                fw.close();
+                assertEquals(1, hub.size());
+                Files.asCharSink(anotherFile, US_ASCII).write("do");
+                await().atMost(30, SECONDS).until(anotherFileChanges::get, is(3));
+                Files.asCharSink(file, US_ASCII).write("do");
+                Thread.sleep(500);
+                assertEquals(2, fileChanges.get());
+                assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+            }
+            // Once the last watcher is closed, the WatchKey is released
+            assertEquals(0, hub.size());
+        }
+    }
+
+    @Test
+    public void testFailingWatcherDoesNotStopSharedHub() throws Throwable {
+        var failingExceptionHandler = new AssertableExceptionHandler();
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        File failingDir = new File("target/tests/FailingWatcherHubTest/failing");
+        File otherDir = new File("target/tests/FailingWatcherHubTest/other");
+        failingDir.mkdirs();
+        otherDir.mkdirs();
+        File otherFile = new File(otherDir, "yo.txt");
+        Files.asCharSink(otherFile, US_ASCII).write("yo");
+
+        AtomicInteger otherChanges = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        try (WatcherHub hub = new WatcherHub(assertableExceptionHandler);
+                DirectoryWatcher failingWatcher = new DirectoryWatcherBuilder().hub(hub).path(failingDir)
+                        .metrics(new WatcherMetrics() {
+                            @Override
+                            public void eventReceived(ChangeKind changeKind) {
+                                failures.incrementAndGet();
+                                throw new IllegalStateException("failing metrics");
+                            }
+                        }).listener((p, c) -> { }).exceptionHandler(failingExceptionHandler).build();
+                DirectoryWatcher otherWatcher = new DirectoryWatcherBuilder().hub(hub).path(otherDir).listener((p, c) -> {
+                    if (p.equals(otherFile.toPath())) {
+                        otherChanges.incrementAndGet();
+                    }
+                }).exceptionHandler(assertableExceptionHandler).build()) {
+            Files.asCharSink(new File(failingDir, "yo.txt"), US_ASCII).write("yo");
+            await().atMost(30, SECONDS).until(() -> failures.get() > 0);
+            failingExceptionHandler.assertErrorMessageCaughtFromTheBackgroundThreadContains("failing metrics");
+
+            Files.asCharSink(otherFile, US_ASCII).write("ho");
+            await().atMost(30, SECONDS).until(otherChanges::get, is(1));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testBlockedListenerDoesNotHoldUpOtherWatchers() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        File blockedDir = new File("target/tests/BlockedListenerTest/blocked");
+        File otherDir = new File("target/tests/BlockedListenerTest/other");
+        blockedDir.mkdirs();
+        otherDir.mkdirs();
+        File blockedFile = new File(blockedDir, "yo.txt");
+        File otherFile = new File(otherDir, "yo.txt");
+        Files.asCharSink(blockedFile, US_ASCII).write("yo");
+        Files.asCharSink(otherFile, US_ASCII).write("yo");
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger otherChanges = new AtomicInteger();
+        try (DirectoryWatcher blockedWatcher = new DirectoryWatcherBuilder().path(blockedDir).listener((p, c) -> {
+                    if (p.equals(blockedFile.toPath())) {
+                        blocked.countDown();
+                        release.await();
+                    }
+                }).exceptionHandler(assertableExceptionHandler).build();
+                DirectoryWatcher otherWatcher = new DirectoryWatcherBuilder().path(otherDir).listener((p, c) -> {
+                    if (p.equals(otherFile.toPath())) {
+                        otherChanges.incrementAndGet();
+                    }
+                }).exceptionHandler(assertableExceptionHandler).build()) {
+            Files.asCharSink(blockedFile, US_ASCII).write("ho");
+            assertTrue(blocked.await(30, SECONDS));
+
+            // While the listener of the other watcher is still blocked
+            Files.asCharSink(otherFile, US_ASCII).write("ho");
+            await().atMost(30, SECONDS).until(otherChanges::get, is(1));
+            Files.asCharSink(otherFile, US_ASCII).write("do");
+            await().atMost(30, SECONDS).until(otherChanges::get, is(2));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testListenerIsNeverCalledConcurrently() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        File dir = new File("target/tests/DirectoryWatcherNotConcurrentTest");
+        if (dir.exists()) {
+            MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        for (int i = 0; i < 300; i++) {
+            File file = new File(dir, i % 3 + "/" + i + ".txt");
+            file.getParentFile().mkdirs();
+            Files.asCharSink(file, US_ASCII).write("yo");
+        }
+
+        AtomicInteger active = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        AtomicInteger calls = new AtomicInteger();
+        // Existing files, stable files, and the per-path quiet period all notify the (same) listener
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).existingFiles(true).stableFiles(10, 100)
+                .quietPeriodPerPath(true).quietPeriodInMS(10).listener((p, c) -> {
+                    if (active.incrementAndGet() > 1) {
+                        overlapped.set(true);
+                    }
+                    Thread.sleep(1);
+                    calls.incrementAndGet();
+                    active.decrementAndGet();
+                }).exceptionHandler(assertableExceptionHandler).buildAsync()) {
+            dw.registration().get(30, SECONDS);
+            // While the existing files are still being notified
+            for (int i = 0; i < 30; i++) {
+                Files.asCharSink(new File(dir, i % 3 + "/" + i + ".txt"), US_ASCII).write("ho");
+            }
+            await().atMost(30, SECONDS).until(() -> calls.get() >= 301 + 30);
+            assertFalse(overlapped.get());
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherDispatchOnVirtualThreads() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        final File dir = new File("target/tests/DirectoryWatcherDispatchTest");
+        dir.mkdirs();
+        File file = new File(dir, "yo.txt");
+        Files.asCharSink(file, US_ASCII).write("yo");
+
+        changed = false;
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).dispatchOnVirtualThreads().listener((p, c) -> {
+            if (p.equals(file.toPath())) {
+                assertTrue(Thread.currentThread().isVirtual());
+                changed = true;
+            }
+        }).exceptionHandler(assertableExceptionHandler).build()) {
+            Files.asCharSink(file, US_ASCII).write("ho");
+            await().atMost(30, SECONDS).until(() -> changed, is(true));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
     @Test
     public void testExistingFilesDirectoryWatcher() throws Throwable {
         var assertableExceptionHandler = new AssertableExceptionHandler();
@@ -179,6 +665,343 @@ public class DirectoryAndFileWatcherTest {
         }
     }
 
+    @Test
+    public void testExistingFilesInBatchesWithParallelRegistration() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        File dir = new File("target/tests/DirectoryWatcherExistingFilesInBatchesTest");
+        if (dir.exists()) {
+            MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        for (int i = 0; i < 1500; i++) {
+            File file = new File(dir, i % 3 + "/" + i + ".txt");
+            file.getParentFile().mkdirs();
+            Files.asCharSink(file, US_ASCII).write("yo");
+        }
+
+        List<Map<Path, ChangeKind>> batches = new CopyOnWriteArrayList<>();
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).existingFiles(true).registrationParallelism(2)
+                .batchListener(batches::add).exceptionHandler(assertableExceptionHandler).build()) {
+            await().atMost(30, SECONDS).until(() -> batches.stream().mapToInt(Map::size).sum(), is(1501));
+            assertEquals(2, batches.size());
+            assertEquals(ChangeKind.MODIFIED, batches.get(0).get(dir.toPath()));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testExistingFilesWithBlockedListenerDoNotHoldUpRegistration() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        File dir = new File("target/tests/DirectoryWatcherExistingFilesBlockedTest");
+        if (dir.exists()) {
+            MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        for (int i = 0; i < 1500; i++) {
+            File file = new File(dir, i % 3 + "/" + i + ".txt");
+            file.getParentFile().mkdirs();
+            Files.asCharSink(file, US_ASCII).write("yo");
+        }
+
+        CountDownLatch unblock = new CountDownLatch(1);
+        AtomicInteger notified = new AtomicInteger();
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).existingFiles(true).registrationParallelism(2)
+                .batchListener(changes -> {
+                    unblock.await();
+                    notified.addAndGet(changes.size());
+                }).exceptionHandler(assertableExceptionHandler).buildAsync()) {
+            // The registration completes although the listener is still blocked on the first batch
+            dw.registration().get(30, SECONDS);
+            assertEquals(0, notified.get());
+            unblock.countDown();
+            await().atMost(30, SECONDS).until(() -> notified.get(), is(1501));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testBuildReturnsOnceExistingFilesAreNotified() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        File dir = new File("target/tests/DirectoryWatcherExistingFilesNotifiedTest");
+        if (dir.exists()) {
+            MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        for (int i = 0; i < 1500; i++) {
+            File file = new File(dir, i % 3 + "/" + i + ".txt");
+            file.getParentFile().mkdirs();
+            Files.asCharSink(file, US_ASCII).write("yo");
+        }
+
+        AtomicInteger notified = new AtomicInteger();
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).existingFiles(true)
+                .listener((p, c) -> {
+                    // A slow listener, so that build() would return before it is notified if it didn't wait
+                    if (notified.incrementAndGet() == 1) {
+                        Thread.sleep(500);
+                    }
+                }).exceptionHandler(assertableExceptionHandler).build()) {
+            // The directory itself, and all files
+            assertEquals(1501, notified.get());
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testPersistentSnapshot() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        File dir = new File("target/tests/DirectoryWatcherPersistentSnapshotTest");
+        File snapshot = new File("target/tests/DirectoryWatcherPersistentSnapshotTest.snapshot");
+        if (dir.exists()) {
+            MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        snapshot.delete();
+        File modified = new File(dir, "sub/modified.txt");
+        File deleted = new File(dir, "deleted.txt");
+        File created = new File(dir, "sub/created.txt");
+        modified.getParentFile().mkdirs();
+        Files.asCharSink(modified, US_ASCII).write("yo");
+        Files.asCharSink(deleted, US_ASCII).write("yo");
+
+        new DirectoryWatcherBuilder().path(dir).persistentSnapshot(snapshot.toPath()).listener((p, c) -> {})
+                .exceptionHandler(assertableExceptionHandler).build().close();
+        assertTrue(snapshot.exists());
+
+        // While nobody is watching
+        Files.asCharSink(modified, US_ASCII).write("hello");
+        assertTrue(deleted.delete());
+        Files.asCharSink(created, US_ASCII).write("yo");
+
+        Map<Path, ChangeKind> changes = new ConcurrentHashMap<>();
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).persistentSnapshot(snapshot.toPath())
+                .eventKinds(ChangeKind.values()).batchListener(changes::putAll)
+                .exceptionHandler(assertableExceptionHandler).build()) {
+            await().atMost(30, SECONDS).until(() -> changes.size(), is(4));
+            assertEquals(ChangeKind.MODIFIED, changes.get(dir.toPath()));
+            assertEquals(ChangeKind.MODIFIED, changes.get(modified.toPath()));
+            assertEquals(ChangeKind.DELETED, changes.get(deleted.toPath()));
+            assertEquals(ChangeKind.CREATED, changes.get(created.toPath()));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherMoves() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        File dir = new File("target/tests/DirectoryWatcherMovesTest");
+        if (dir.exists()) {
+            MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        File file = new File(dir, "a.txt");
+        File subDir = new File(dir, "sub");
+        subDir.mkdirs();
+        Files.asCharSink(file, US_ASCII).write("yo");
+        for (int i = 0; i < 10; i++) {
+            Files.asCharSink(new File(subDir, i + ".txt"), US_ASCII).write("yo");
+        }
+
+        List<String> changes = new CopyOnWriteArrayList<>();
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).eventKinds(ChangeKind.values()).listener(new Listener() {
+            @Override
+            public void onChange(Path path, ChangeKind changeKind) {
+                changes.add(changeKind + " " + path.getFileName());
+            }
+
+            @Override
+            public void onMove(Path source, Path target) {
+                changes.add("MOVED " + source.getFileName() + " " + target.getFileName());
+            }
+        }).exceptionHandler(assertableExceptionHandler).build()) {
+            await().atMost(5, SECONDS).until(() -> changes.size(), is(1));
+
+            java.nio.file.Files.move(file.toPath(), new File(dir, "b.txt").toPath());
+            await().atMost(30, SECONDS).until(() -> changes.size(), is(2));
+            assertEquals("MOVED a.txt b.txt", changes.get(1));
+
+            // Once for the directory, not for each file in it
+            java.nio.file.Files.move(subDir.toPath(), new File(dir, "moved").toPath());
+            await().atMost(30, SECONDS).until(() -> changes.size(), is(3));
+            assertEquals("MOVED sub moved", changes.get(2));
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherMoveOutWhileSharedHubIsBusy() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        File dir = new File("target/tests/DirectoryWatcherMoveOutBusyHubTest");
+        if (dir.exists()) {
+            MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        File watchedDir = new File(dir, "watched");
+        File busyDir = new File(dir, "busy");
+        watchedDir.mkdirs();
+        busyDir.mkdirs();
+        File file = new File(watchedDir, "a.txt");
+        Files.asCharSink(file, US_ASCII).write("yo");
+
+        List<String> changes = new CopyOnWriteArrayList<>();
+        AtomicInteger busyChanges = new AtomicInteger();
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread busy = new Thread(() -> {
+            File busyFile = new File(busyDir, "busy.txt");
+            for (int i = 0; !stop.get(); i++) {
+                try {
+                    Files.asCharSink(busyFile, US_ASCII).write(Integer.toString(i));
+                    Thread.sleep(2);
+                } catch (Exception e) {
+                    assertableExceptionHandler.onException(e);
+                    return;
+                }
+            }
+        });
+        try (WatcherHub hub = new WatcherHub(assertableExceptionHandler);
+                DirectoryWatcher dw = new DirectoryWatcherBuilder().hub(hub).path(watchedDir).eventKinds(ChangeKind.values())
+                        .quietPeriodInMS(0).listener((p, c) -> changes.add(c + " " + p.getFileName()))
+                        .exceptionHandler(assertableExceptionHandler).build();
+                DirectoryWatcher busyWatcher = new DirectoryWatcherBuilder().hub(hub).path(busyDir).quietPeriodInMS(0)
+                        .listener((p, c) -> busyChanges.incrementAndGet()).exceptionHandler(assertableExceptionHandler).build()) {
+            await().atMost(5, SECONDS).until(() -> changes.size(), is(1));
+            busy.start();
+            await().atMost(30, SECONDS).until(() -> busyChanges.get() > 10);
+
+            // Out of the watched tree, so no CREATED will follow, and this watcher gets no more events
+            java.nio.file.Files.move(file.toPath(), new File(dir, "a.txt").toPath());
+            await().atMost(30, SECONDS).until(() -> changes.contains("DELETED a.txt"));
+            assertTrue(busy.isAlive());
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        } finally {
+            stop.set(true);
+            busy.join();
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherEventListener() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        File dir = new File("target/tests/DirectoryWatcherEventListenerTest");
+        if (dir.exists()) {
+            MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        File subDir = new File(dir, "sub");
+        subDir.mkdirs();
+        File file = new File(subDir, "a.txt");
+
+        List<ChangeEvent> events = new CopyOnWriteArrayList<>();
+        try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).eventKinds(ChangeKind.values())
+                .overflowRecovery(true).eventListener(events::add).exceptionHandler(assertableExceptionHandler).build()) {
+            await().atMost(5, SECONDS).until(() -> events.size(), is(1));
+            assertEquals(dir.toPath(), events.get(0).root());
+
+            Files.asCharSink(file, US_ASCII).write("hello");
+            await().atMost(30, SECONDS).until(() -> events.size(), is(2));
+            ChangeEvent event = events.get(1);
+            assertEquals(ChangeKind.CREATED, event.changeKind());
+            assertEquals(dir.toPath(), event.root());
+            assertEquals(new File("sub", "a.txt").toPath(), event.relativePath());
+            assertTrue(event.sequence() > events.get(0).sequence());
+            BasicFileAttributes attributes = event.attributes();
+            assertTrue(attributes != null && attributes.isRegularFile());
+            assertSame(attributes, event.attributes());
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        }
+    }
+
+    @Test
+    public void testDirectoryWatcherPublisher() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        File dir = new File("target/tests/DirectoryWatcherPublisherTest");
+        if (dir.exists()) {
+            MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        dir.mkdirs();
+        File file = new File(dir, "a.txt");
+
+        List<String> received = new CopyOnWriteArrayList<>();
+        AtomicReference<Flow.@Nullable Subscription> subscription = new AtomicReference<>();
+        try (ChangePublisher publisher = new ChangePublisher()) {
+            publisher.subscribe(new Flow.Subscriber<ChangeEvent>() {
+                @Override
+                public void onSubscribe(Flow.Subscription s) {
+                    subscription.set(s); // but does not request anything yet
+                }
+
+                @Override
+                public void onNext(ChangeEvent event) {
+                    received.add(event.changeKind() + " " + event.relativePath());
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    assertableExceptionHandler.onException(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    received.add("COMPLETE");
+                }
+            });
+            try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).eventKinds(ChangeKind.values())
+                    .quietPeriodPerPath(true).quietPeriodInMS(50).publisher(publisher)
+                    .exceptionHandler(assertableExceptionHandler).build()) {
+                Files.asCharSink(file, US_ASCII).write("hello");
+                Thread.sleep(500);
+                Files.asCharSink(file, US_ASCII).write("world");
+                Thread.sleep(500);
+                assertTrue(received.isEmpty());
+
+                // The changes of a.txt are merged into one, while nothing was requested
+                Objects.requireNonNull(subscription.get()).request(Long.MAX_VALUE);
+                await().atMost(5, SECONDS).until(() -> received.size(), is(2));
+                assertEquals(List.of("MODIFIED ", "CREATED a.txt"), received);
+                assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+            }
+        }
+        await().atMost(5, SECONDS).until(() -> received.size(), is(3));
+        assertEquals("COMPLETE", received.get(2));
+    }
+
+    @Test
+    public void testDirectoryWatcherPublisherPublishesEveryPath() throws Throwable {
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        File dir = new File("target/tests/DirectoryWatcherPublisherEveryPathTest");
+        if (dir.exists()) {
+            MoreFiles.deleteRecursively(dir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+        dir.mkdirs();
+
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        try (ChangePublisher publisher = new ChangePublisher()) {
+            publisher.subscribe(new Flow.Subscriber<ChangeEvent>() {
+                @Override
+                public void onSubscribe(Flow.Subscription s) {
+                    s.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(ChangeEvent event) {
+                    received.add(event.relativePath().toString());
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    assertableExceptionHandler.onException(t);
+                }
+
+                @Override
+                public void onComplete() {
+                    // nothing to check here
+                }
+            });
+            // Not quietPeriodPerPath(), yet all of the paths which change within one quiet period are published
+            try (DirectoryWatcher dw = new DirectoryWatcherBuilder().path(dir).quietPeriodInMS(500).publisher(publisher)
+                    .exceptionHandler(assertableExceptionHandler).build()) {
+                for (String name : List.of("a.txt", "b.txt", "c.txt")) {
+                    Files.asCharSink(new File(dir, name), US_ASCII).write(name);
+                }
+                await().atMost(30, SECONDS).until(() -> received.containsAll(Set.of("a.txt", "b.txt", "c.txt")));
+                assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+            }
+        }
+    }
+
     @Test
     public void testFilteredDirectoryWatcher() throws Throwable {
         var assertableExceptionHandler = new AssertableExceptionHandler();
@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch.test;
+
+import static ch.vorburger.fswatch.DirectoryWatcher.ChangeKind.CREATED;
+import static ch.vorburger.fswatch.DirectoryWatcher.ChangeKind.DELETED;
+import static ch.vorburger.fswatch.DirectoryWatcher.ChangeKind.MODIFIED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+import ch.vorburger.fswatch.EventQueue;
+import ch.vorburger.fswatch.EventQueue.OverflowPolicy;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests for {@link EventQueue}.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class EventQueueTest {
+
+    Path a = Path.of("a");
+    Path b = Path.of("b");
+    Path c = Path.of("c");
+
+    List<String> notified = new ArrayList<>();
+    List<Runnable> drainTasks = new ArrayList<>();
+
+    private Listener attach(EventQueue queue) {
+        // The "executor" just collects the drain task, so that the test can run it when it wants
+        return queue.attach((path, changeKind) -> notified.add(changeKind + " " + path), drainTasks::add,
+                t -> fail(t.toString()));
+    }
+
+    private void drain() {
+        List<Runnable> tasks = new ArrayList<>(drainTasks);
+        drainTasks.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    @Test
+    public void testDropOldest() throws Throwable {
+        EventQueue queue = new EventQueue(2, OverflowPolicy.DROP_OLDEST);
+        Listener listener = attach(queue);
+        listener.onChange(a, MODIFIED);
+        listener.onChange(b, MODIFIED);
+        listener.onChange(c, MODIFIED);
+        assertEquals(2, queue.depth());
+        assertEquals(1, queue.dropped());
+
+        drain();
+        assertEquals(List.of("MODIFIED b", "MODIFIED c"), notified);
+        assertEquals(0, queue.depth());
+    }
+
+    @Test
+    public void testCoalesceByPath() throws Throwable {
+        EventQueue queue = new EventQueue(2, OverflowPolicy.COALESCE_BY_PATH);
+        Listener listener = attach(queue);
+        listener.onChange(a, CREATED);
+        listener.onChange(b, MODIFIED);
+        listener.onChange(a, MODIFIED);
+        listener.onChange(b, MODIFIED);
+        assertEquals(2, queue.depth());
+        assertEquals(2, queue.coalesced());
+
+        listener.onChange(b, DELETED);
+        listener.onChange(a, DELETED);
+        assertEquals(1, queue.depth());
+
+        drain();
+        assertEquals(List.of("DELETED b"), notified);
+        assertEquals(0, queue.dropped());
+    }
+
+    @Test
+    public void testFail() throws Throwable {
+        EventQueue queue = new EventQueue(1, OverflowPolicy.FAIL);
+        Listener listener = attach(queue);
+        listener.onChange(a, MODIFIED);
+        try {
+            listener.onChange(b, MODIFIED);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(1, queue.dropped());
+
+        drain();
+        assertEquals(List.of("MODIFIED a"), notified);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAttachTwice() {
+        EventQueue queue = new EventQueue(1, OverflowPolicy.BLOCK);
+        attach(queue);
+        attach(queue);
+    }
+}
@@ -19,22 +19,36 @@
  */
 package ch.vorburger.fswatch.test;
 
+import static ch.vorburger.fswatch.DirectoryWatcher.ChangeKind.CREATED;
+import static ch.vorburger.fswatch.DirectoryWatcher.ChangeKind.DELETED;
 import static ch.vorburger.fswatch.DirectoryWatcher.ChangeKind.MODIFIED;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.awaitility.Awaitility.await;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
+import ch.vorburger.fswatch.CoalescingQuietPeriodListener;
+import ch.vorburger.fswatch.DebouncingListener;
 import ch.vorburger.fswatch.DirectoryWatcher;
+import ch.vorburger.fswatch.DirectoryWatcher.ChangeKind;
 import ch.vorburger.fswatch.DirectoryWatcher.Listener;
 import ch.vorburger.fswatch.QuietPeriodListener;
+import ch.vorburger.fswatch.WatcherMetrics;
+import org.jspecify.annotations.Nullable;
 import org.junit.Test;
 
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class QuietPeriodListenerTest {
 
     volatile boolean notified;
+    volatile @Nullable Map<Path, ChangeKind> notifiedChanges;
 
     @Test
     public void testQuietPeriodListener() throws Throwable {
@@ -74,4 +88,66 @@ public class QuietPeriodListenerTest {
         await().atMost(1, SECONDS).until(() -> notified, is(true));
         assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
     }
+
+    @Test
+    public void testCoalescingQuietPeriodListener() throws Throwable {
+        Path a = Path.of("a");
+        Path b = Path.of("b");
+        Path c = Path.of("c");
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        Listener quietListener = new CoalescingQuietPeriodListener(100, changes -> {
+            assertFalse(notified); // We want this to only be called once
+            notifiedChanges = changes;
+            notified = true;
+        }, assertableExceptionHandler);
+
+        notified = false;
+        quietListener.onChange(a, MODIFIED);
+        quietListener.onChange(b, CREATED);
+        quietListener.onChange(c, CREATED);
+        quietListener.onChange(b, MODIFIED);
+        quietListener.onChange(c, DELETED);
+        quietListener.onChange(a, MODIFIED);
+        await().atMost(1, SECONDS).until(() -> notified, is(true));
+        assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        assertEquals(Map.of(a, MODIFIED, b, CREATED), notifiedChanges);
+
+        notified = false;
+        quietListener.onChange(c, DELETED);
+        quietListener.onChange(c, CREATED);
+        await().atMost(1, SECONDS).until(() -> notified, is(true));
+        assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        assertEquals(Map.of(c, MODIFIED), notifiedChanges);
+    }
+
+    @Test
+    public void testDebouncingListener() throws Throwable {
+        Path busy = Path.of("busy");
+        Path quiet = Path.of("quiet");
+        var assertableExceptionHandler = new AssertableExceptionHandler();
+        List<String> notifications = new CopyOnWriteArrayList<>();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            Listener debouncingListener = new DebouncingListener(100, 300,
+                    (path, changeKind) -> notifications.add(changeKind + " " + path), assertableExceptionHandler,
+                    scheduler, WatcherMetrics.NONE);
+
+            // The quiet path is notified after its own quiet period, although the busy one never is quiet
+            debouncingListener.onChange(quiet, CREATED);
+            debouncingListener.onChange(quiet, MODIFIED);
+            for (int i = 0; i < 50; i++) {
+                debouncingListener.onChange(busy, MODIFIED);
+                Thread.sleep(20);
+                if (i == 25) {
+                    // ... and the busy one was notified at least after the maximum wait
+                    assertEquals(List.of("CREATED quiet", "MODIFIED busy"), notifications.subList(0, 2));
+                }
+            }
+            // Every 300ms while busy, and once more when it finally is quiet
+            await().atMost(1, SECONDS).until(() -> notifications.stream().filter("MODIFIED busy"::equals).count() >= 3);
+            assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+        } finally {
+            scheduler.shutdown();
+        }
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * ch.vorburger.fswatch
+ * %%
+ * Copyright (C) 2015 - 2026 Michael Vorburger.ch
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package ch.vorburger.fswatch.test;
+
+import static ch.vorburger.fswatch.DirectoryWatcher.ChangeKind.CREATED;
+import static ch.vorburger.fswatch.DirectoryWatcher.ChangeKind.DELETED;
+import static ch.vorburger.fswatch.DirectoryWatcher.ChangeKind.MODIFIED;
+import static com.google.common.base.Charsets.US_ASCII;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ch.vorburger.fswatch.DirectoryWatcher.Listener;
+import ch.vorburger.fswatch.StableFileListener;
+import com.google.common.io.FileWriteMode;
+import com.google.common.io.Files;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Test;
+
+/**
+ * Tests for {@link StableFileListener}.
+ *
+ * @author Michael Vorburger.ch
+ */
+public class StableFileListenerTest {
+
+    AssertableExceptionHandler assertableExceptionHandler = new AssertableExceptionHandler();
+    List<String> notified = new CopyOnWriteArrayList<>();
+    Listener listener = new StableFileListener(200, 1000,
+            (path, changeKind) -> notified.add(changeKind + " " + path.getFileName()), assertableExceptionHandler);
+
+    @Test
+    public void testFileIsOnlyNotifiedOnceWritten() throws Throwable {
+        File file = new File("target/tests/StableFileListenerTest/big.txt");
+        file.getParentFile().mkdirs();
+        file.delete();
+        Path path = file.toPath();
+        Files.asCharSink(file, US_ASCII).write("a");
+        listener.onChange(path, CREATED);
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(100);
+            Files.asCharSink(file, US_ASCII, FileWriteMode.APPEND).write("b");
+            listener.onChange(path, MODIFIED);
+        }
+        assertTrue(notified.isEmpty());
+
+        await().atMost(5, SECONDS).until(() -> notified.size(), is(1));
+        assertEquals(List.of("CREATED big.txt"), notified);
+        assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+    }
+
+    @Test
+    public void testFileDeletedBeforeWrittenIsNotNotified() throws Throwable {
+        File file = new File("target/tests/StableFileListenerTest/temp.txt");
+        file.getParentFile().mkdirs();
+        Path path = file.toPath();
+        Files.asCharSink(file, US_ASCII).write("a");
+        listener.onChange(path, CREATED);
+        file.delete();
+        listener.onChange(path, DELETED);
+
+        listener.onChange(file.getParentFile().toPath(), MODIFIED);
+        Thread.sleep(500);
+        assertEquals(List.of("MODIFIED StableFileListenerTest"), notified);
+        assertableExceptionHandler.assertNoErrorInTheBackgroundThread();
+    }
+}